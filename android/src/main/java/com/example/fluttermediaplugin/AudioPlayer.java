@@ -2,6 +2,8 @@ package com.example.fluttermediaplugin;
 
 import android.content.Context;
 import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -9,6 +11,7 @@ import io.flutter.plugin.common.MethodChannel;
 
 import android.util.Log;
 
+import com.example.fluttermediaplugin.Media.Media;
 import com.example.fluttermediaplugin.Media.Song;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.ExoPlaybackException;
@@ -27,37 +30,137 @@ import com.google.android.exoplayer2.trackselection.TrackSelector;
 import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory;
 import com.google.android.exoplayer2.util.Util;
 
-import org.json.JSONObject;
-
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import static com.example.fluttermediaplugin.FlutterMediaPlugin.AUDIO_METHOD_TYPE;
+import static com.example.fluttermediaplugin.Utility.Constants.AUDIO_QUEUE_FILE;
 import static com.google.android.exoplayer2.C.USAGE_MEDIA;
 
 class AudioPlayer {
     private static final String AUDIO_EXO_PLAYER_LISTENER_THREAD_NAME = "audio_player_thread_name";
     private static final String TAG = "AudioPlayer";
+    // playlists longer than this only materialize the media sources around the current song
+    private static final int LAZY_PLAYLIST_SIZE = 100;
+    private static final long POSITION_SAVE_INTERVAL_MS = 5000;
+    private static final int MAX_PLAYLIST_PAGE_SIZE = 500;
+    private static final int DEFAULT_RESIDENT_SONG_BUDGET = 20000;
 
     private AudioExoPlayerListener audioExoPlayerListener;
     private SimpleExoPlayer simpleExoPlayer;
-    private MethodChannel channel;
+    private OutboundEventBus eventBus;
+    private PositionAnchorStream positionAnchorStream;
 
     private boolean isShowingNotification = false;
 
     private Playlist<Song> playlist;
+    // built playlists by name in least recently played order, the current one included
+    private final LinkedHashMap<String, Playlist<Song>> residentPlaylists = new LinkedHashMap<>(16, 0.75f, true);
+    private int residentSongBudget = DEFAULT_RESIDENT_SONG_BUDGET;
+    // shuffle seed of new playlists, so the same songs are shuffled the same way
+    private long shuffleSeed = new Random().nextLong();
     private MediaSourceEventListener playlistEventListener;
     private DefaultDataSourceFactory dataSourceFactory;
+    private MediaSourceSettings mediaSourceSettings = MediaSourceSettings.DEFAULT;
+    private QueueStore queueStore;
+    private CachePrefetcher cachePrefetcher;
+    private CrossfadeEngine crossfadeEngine;
+    private SkipLatencyTracker skipLatencyTracker;
+    private ProfiledLoadControl loadControl;
+    private boolean isRestoringQueue = false;
+    // saves the position while playing. The playback polling can't drive it, it stops while
+    // dart listens to position anchors
+    private final Handler checkpointHandler = new Handler(Looper.getMainLooper());
+    private final Runnable checkpointTick = new Runnable() {
+        @Override
+        public void run() {
+            persistPosition();
+            checkpointHandler.postDelayed(this, POSITION_SAVE_INTERVAL_MS);
+        }
+    };
+
+    // in paged mode dart holds no playlist copy, only the pages it asks for
+    private boolean isPlaylistPaged = false;
+    private int playlistWindowOffset = 0;
+    // 0 if dart isn't subscribed to a playlist window
+    private int playlistWindowLimit = 0;
 
     SimpleExoPlayer getSimpleExoPlayer() {
         return simpleExoPlayer;
     }
 
-    AudioPlayer(@NonNull Context context, @NonNull MethodChannel channel) {
-        this.channel = channel;
+    AudioPlayer(@NonNull Context context, @NonNull OutboundEventBus eventBus, @NonNull PositionAnchorStream positionAnchorStream) {
+        this.eventBus = eventBus;
+        this.positionAnchorStream = positionAnchorStream;
+        eventBus.setLatestWins(AUDIO_METHOD_TYPE + "/onPlaybackUpdate");
+        eventBus.setLatestWins(AUDIO_METHOD_TYPE + "/onBufferedUpdate");
+        eventBus.setLatestWins(AUDIO_METHOD_TYPE + "/onRepeatModeChanged");
+        eventBus.setLatestWins(AUDIO_METHOD_TYPE + "/onShuffleModeEnabledChanged");
+        eventBus.setLatestWins(AUDIO_METHOD_TYPE + "/onPlaylistWindow");
+        // dart catches up on collapsed playlist edits with syncPlaylist
+        eventBus.setResync(new OutboundEventBus.Resync() {
+            @NonNull
+            @Override
+            public String getMethod() {
+                return AUDIO_METHOD_TYPE + "/onPlaylistResync";
+            }
+
+            @Override
+            public Object getArguments() {
+                Map<String, Object> args = new HashMap<>();
+                args.put("playlistName", playlist != null ? playlist.getPlaylistName() : null);
+                args.put("playlistSize", playlist != null ? playlist.getSize() : 0);
+                args.put("revision", playlist != null ? playlist.getRevision() : -1L);
+                return args;
+            }
+        }, AUDIO_METHOD_TYPE + "/onPlaylistChanged", AUDIO_METHOD_TYPE + "/onPlaylistDelta",
+                AUDIO_METHOD_TYPE + "/onMediaAddedToPlaylist", AUDIO_METHOD_TYPE + "/onMediaRemovedFromPlaylist");
+        queueStore = new QueueStore(new File(context.getFilesDir(), AUDIO_QUEUE_FILE));
         initSimpleExoPlayer(context);
+        cachePrefetcher = new CachePrefetcher(DownloadManager.getDownloadCache(context), dataSourceFactory);
+        skipLatencyTracker = new SkipLatencyTracker(simpleExoPlayer, DownloadManager.getDownloadCache(context), new SkipLatencyTracker.Callback() {
+            @Nullable
+            @Override
+            public Media getCurrentMedia() {
+                return playlist != null ? getSongByIndex(playlist.getCurrentIndex()) : null;
+            }
+        });
+        crossfadeEngine = new CrossfadeEngine(context, simpleExoPlayer, new CrossfadeEngine.Callback() {
+            @Override
+            public int getCurrentIndex() {
+                return playlist != null ? playlist.getCurrentIndex() : C.INDEX_UNSET;
+            }
+
+            @Override
+            public int getNextIndex() {
+                return playlist != null ? playlist.getNextIndex() : C.INDEX_UNSET;
+            }
+
+            @Nullable
+            @Override
+            public MediaSource createCurrentMediaSource() {
+                Song song = playlist != null ? getSongByIndex(playlist.getCurrentIndex()) : null;
+                return song != null ? playlist.createMediaSource(song) : null;
+            }
+
+            @Override
+            public void skipToNext() {
+                playlist.skipToNext();
+            }
+
+            @Override
+            public void onTransition(@NonNull Map<String, Object> transition) {
+                String method = AUDIO_METHOD_TYPE + "/onTrackTransition";
+                eventBus.send(method, transition);
+            }
+        });
     }
 
     private void initSimpleExoPlayer(Context context) {
@@ -68,7 +171,8 @@ class AudioPlayer {
             simpleExoPlayer.release();
         }
 
-        simpleExoPlayer = ExoPlayerFactory.newSimpleInstance(context, trackSelector);
+        loadControl = new ProfiledLoadControl(loadControl != null ? loadControl.getProfile() : BufferProfile.DEFAULT);
+        simpleExoPlayer = ExoPlayerFactory.newSimpleInstance(context, trackSelector, loadControl);
         AudioAttributes audioAttributes = new AudioAttributes.Builder()
                 .setUsage(USAGE_MEDIA)
                 .setContentType(C.CONTENT_TYPE_MUSIC)
@@ -124,8 +228,8 @@ class AudioPlayer {
         };
 
         audioExoPlayerListener = new AudioExoPlayerListener();
+        audioExoPlayerListener.setPositionAnchorStream(positionAnchorStream);
         simpleExoPlayer.addListener(audioExoPlayerListener);
-        audioExoPlayerListener.onInitialized();
     }
 
     private void showAudioPlayerNotification() {
@@ -149,14 +253,147 @@ class AudioPlayer {
         return null;
     }
 
-    void initialize() {
+    Song getSongByWindowIndex(int windowIndex) {
+        if (playlist == null) {
+            return null;
+        }
+        return getSongByIndex(playlist.indexOfWindow(windowIndex));
+    }
+
+    /**
+     * @param knownRevision playlist revision dart already holds, the playlist is only sent
+     *                      again if it changed since. -1 if dart holds no playlist.
+     * @param isPlaylistPaged   true if dart reads the playlist in pages, only the playlist
+     *                          metadata is sent then
+     */
+    void initialize(final long knownRevision, boolean isPlaylistPaged) {
+        this.isPlaylistPaged = isPlaylistPaged;
+        if (!isPlaylistPaged) {
+            playlistWindowLimit = 0;
+        }
+        if (playlist != null || isRestoringQueue) {
+            if (audioExoPlayerListener != null) {
+                audioExoPlayerListener.onInitialized(knownRevision);
+            }
+            return;
+        }
+
+        // after process death the queue is restored from disk instead of waiting for dart
+        isRestoringQueue = true;
+        WorkerExecutor.execute(new WorkerExecutor.Job<QueueStore.SavedQueue>() {
+            @Override
+            QueueStore.SavedQueue doInBackground() throws Exception {
+                return queueStore.load();
+            }
+
+            @Override
+            void onResult(QueueStore.SavedQueue savedQueue) {
+                isRestoringQueue = false;
+                if (audioExoPlayerListener == null) {
+                    return;
+                }
+                if (savedQueue != null && playlist == null) {
+                    createPlaylist(savedQueue.playlistName, savedQueue.songs, savedQueue.index, savedQueue.position, new Runnable() {
+                        @Override
+                        public void run() {
+                            Log.d(TAG, "restored queue size: " + playlist.getSize());
+                        }
+                    });
+                }
+                audioExoPlayerListener.onInitialized(knownRevision);
+            }
+
+            @Override
+            void onError(@NonNull Exception e) {
+                super.onError(e);
+                isRestoringQueue = false;
+                if (audioExoPlayerListener != null) {
+                    audioExoPlayerListener.onInitialized(knownRevision);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the deltas dart needs to reach the current playlist revision, or the full playlist
+     * if they are no longer kept
+     */
+    Map<String, Object> syncPlaylist(long knownRevision) {
+        Map<String, Object> sync = new HashMap<>();
+        if (playlist == null) {
+            sync.put("revision", -1L);
+            return sync;
+        }
+
+        sync.put("revision", playlist.getRevision());
+        if (knownRevision == playlist.getRevision()) {
+            return sync;
+        }
+
+        ArrayList<Map<String, Object>> deltas = playlist.deltasSince(knownRevision);
+        if (deltas != null) {
+            sync.put("deltas", deltas);
+        } else if (isPlaylistPaged) {
+            sync.put("playlistSize", playlist.getSize());
+        } else {
+            sync.put("playlistBytes", PlaylistCodec.encode(playlist.getPlaylistName(), playlist.getMediaList()));
+        }
+        return sync;
+    }
+
+    /**
+     * @return the songs from offset up to limit songs, null if the offset is out of range
+     */
+    Map<String, Object> getPlaylistPage(int offset, int limit) {
+        int size = playlist != null ? playlist.getSize() : 0;
+        if (offset < 0 || offset > size || limit <= 0) {
+            return null;
+        }
+
+        Map<String, Object> page = new HashMap<>();
+        page.put("offset", offset);
+        page.put("playlistSize", size);
+        if (playlist == null) {
+            page.put("revision", -1L);
+            page.put("playlistBytes", PlaylistCodec.encode("", new ArrayList<Song>()));
+            return page;
+        }
+
+        int end = Math.min(size, offset + Math.min(limit, MAX_PLAYLIST_PAGE_SIZE));
+        page.put("revision", playlist.getRevision());
+        page.put("playlistBytes", PlaylistCodec.encode(playlist.getPlaylistName(), playlist.getMediaList().subList(offset, end)));
+        return page;
+    }
+
+    /**
+     * Subscribes dart to the songs from offset up to limit songs. The window is sent now and
+     * again with each playlist change, as a latest wins event. A limit of 0 unsubscribes.
+     */
+    boolean setPlaylistWindow(int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            return false;
+        }
+
+        playlistWindowOffset = offset;
+        playlistWindowLimit = Math.min(limit, MAX_PLAYLIST_PAGE_SIZE);
         if (audioExoPlayerListener != null) {
-            audioExoPlayerListener.onInitialized();
+            audioExoPlayerListener.onPlaylistWindow();
         }
+        return true;
     }
 
-    void setChannel(MethodChannel channel) {
-        this.channel = channel;
+    /**
+     * Applies to the buffering from now on, except for the back buffer, see {@link ProfiledLoadControl}.
+     */
+    void setBufferProfile(@NonNull BufferProfile bufferProfile) {
+        loadControl.setProfile(bufferProfile);
+    }
+
+    /**
+     * Applies to the playlists set afterwards, the current playlist keeps its media sources.
+     */
+    void setMediaSourceSettings(@NonNull MediaSourceSettings mediaSourceSettings) {
+        this.mediaSourceSettings = mediaSourceSettings;
     }
 
     void onNotificationStarted() {
@@ -201,6 +438,31 @@ class AudioPlayer {
         simpleExoPlayer.setShuffleModeEnabled(shuffleModeEnabled);
     }
 
+    /**
+     * Reshuffles the current playlist with the seed, later playlists are shuffled with it too.
+     *
+     * @return the new shuffle order
+     */
+    Map<String, Object> setShuffleSeed(long shuffleSeed) {
+        this.shuffleSeed = shuffleSeed;
+        if (playlist != null) {
+            playlist.setShuffleSeed(shuffleSeed);
+            prefetchUpcoming();
+        }
+        return getShuffleOrder();
+    }
+
+    /**
+     * @return the seed and the playlist indices in shuffled play order
+     */
+    Map<String, Object> getShuffleOrder() {
+        Map<String, Object> shuffleOrder = new HashMap<>();
+        shuffleOrder.put("seed", shuffleSeed);
+        shuffleOrder.put("order", playlist != null ? playlist.getShuffleOrder() : new int[0]);
+        shuffleOrder.put("revision", playlist != null ? playlist.getRevision() : -1L);
+        return shuffleOrder;
+    }
+
     void seekTo(long position) {
         if (simpleExoPlayer.getPlaybackState() == Player.STATE_IDLE || playlist == null) {
             return;
@@ -216,6 +478,7 @@ class AudioPlayer {
         if (simpleExoPlayer.getPlaybackState() == Player.STATE_IDLE || playlist == null) {
             return;
         }
+        skipLatencyTracker.onCommand();
         playlist.skipToIndex(index);
     }
 
@@ -223,6 +486,7 @@ class AudioPlayer {
         if (simpleExoPlayer.getPlaybackState() == Player.STATE_IDLE || playlist == null) {
             return;
         }
+        skipLatencyTracker.onCommand();
         playlist.skipToNext();
     }
 
@@ -230,6 +494,7 @@ class AudioPlayer {
         if (simpleExoPlayer.getPlaybackState() == Player.STATE_IDLE || playlist == null) {
             return;
         }
+        skipLatencyTracker.onCommand();
         playlist.skipToPrevious();
     }
 
@@ -249,6 +514,16 @@ class AudioPlayer {
         }
 
         playlist.clear();
+        for (Playlist<Song> residentPlaylist : residentPlaylists.values()) {
+            if (residentPlaylist != playlist) {
+                residentPlaylist.clear();
+            }
+        }
+        residentPlaylists.clear();
+        checkpointHandler.removeCallbacks(checkpointTick);
+        queueStore.clear();
+        cachePrefetcher.cancel();
+        crossfadeEngine.cancel();
         audioExoPlayerListener.onPlaylistChanged(playlist);
         audioExoPlayerListener.clear();
     }
@@ -257,36 +532,187 @@ class AudioPlayer {
         stop();
 
         simpleExoPlayer.removeListener(audioExoPlayerListener);
+        audioExoPlayerListener.setPositionAnchorStream(null);
+        crossfadeEngine.release();
+        skipLatencyTracker.release();
         simpleExoPlayer.release();
         audioExoPlayerListener = null;
     }
 
-    void setPlaylist(@NonNull JSONObject playlistJsonObject, MethodChannel.Result result) {
-        ArrayList<Song> songs = Playlist.songsFromJson(playlistJsonObject);
-        String playlistName = Playlist.playlistNameFromJson(playlistJsonObject);
-        if (playlist != null) {
-            playlist.clear();
-        }
-
+    void setPlaylist(String playlistName, ArrayList<Song> songs, final MethodChannel.Result result) {
         if (playlistName != null && songs != null) {
-            playlist = new Playlist<>(playlistName, simpleExoPlayer, playlistEventListener, dataSourceFactory);
-            playlist.prepare(songs, result);
+            if (playlist != null) {
+                playlist.suspend();
+            }
+            // dart sent new songs for this name, the resident playlist is out of date
+            Playlist<Song> stalePlaylist = residentPlaylists.remove(playlistName);
+            if (stalePlaylist != null) {
+                stalePlaylist.clear();
+            }
+
+            createPlaylist(playlistName, songs, 0, 0, new Runnable() {
+                @Override
+                public void run() {
+                    result.success(true);
+                }
+            });
 
             audioExoPlayerListener.onPlaylistChanged(playlist);
             Log.d(TAG, "after media prepare size: " + playlist.getSize());
         } else {
+            if (playlist != null) {
+                residentPlaylists.remove(playlist.getPlaylistName());
+                playlist.clear();
+            }
             result.success(false);
         }
     }
 
+    /**
+     * Plays a resident playlist again from where it was left, with its media sources as they
+     * were built.
+     *
+     * @return false if no playlist of the name is resident, dart has to set it again
+     */
+    boolean switchPlaylist(@NonNull String playlistName, @NonNull final MethodChannel.Result result) {
+        Playlist<Song> residentPlaylist = residentPlaylists.get(playlistName);
+        if (residentPlaylist == null) {
+            return false;
+        }
+
+        if (residentPlaylist != playlist) {
+            if (playlist != null) {
+                playlist.suspend();
+            }
+            playlist = residentPlaylist;
+            playlist.resume(new Runnable() {
+                @Override
+                public void run() {
+                    result.success(true);
+                }
+            });
+            writeQueueSnapshot();
+            prefetchUpcoming();
+            audioExoPlayerListener.onPlaylistChanged(playlist);
+        } else {
+            result.success(true);
+        }
+        return true;
+    }
+
+    /**
+     * @param residentSongBudget songs of all resident playlists together, least recently played
+     *                           playlists are released beyond it. The current playlist is kept
+     *                           whatever its size.
+     */
+    void setResidentSongBudget(int residentSongBudget) {
+        this.residentSongBudget = residentSongBudget;
+        trimResidentPlaylists();
+    }
+
+    private void trimResidentPlaylists() {
+        int residentSongs = 0;
+        for (Playlist<Song> residentPlaylist : residentPlaylists.values()) {
+            residentSongs += residentPlaylist.getSize();
+        }
+
+        Iterator<Playlist<Song>> iterator = residentPlaylists.values().iterator();
+        while (residentSongs > residentSongBudget && iterator.hasNext()) {
+            Playlist<Song> residentPlaylist = iterator.next();
+            if (residentPlaylist == playlist) {
+                continue;
+            }
+            residentSongs -= residentPlaylist.getSize();
+            residentPlaylist.clear();
+            iterator.remove();
+        }
+    }
+
+    private void createPlaylist(String playlistName, ArrayList<Song> songs, int startIndex, long startPositionMs, Runnable actionOnPrepared) {
+        playlist = new Playlist<>(playlistName, simpleExoPlayer, playlistEventListener, dataSourceFactory, mediaSourceSettings, songs.size() > LAZY_PLAYLIST_SIZE, shuffleSeed);
+        playlist.prepare(songs, startIndex, startPositionMs, actionOnPrepared);
+        residentPlaylists.put(playlistName, playlist);
+        trimResidentPlaylists();
+        queueStore.writeSnapshot(playlistName, new ArrayList<>(songs), startIndex, startPositionMs);
+    }
+
+    private void onQueueChanged(long baseRevision) {
+        persistQueue(baseRevision);
+        // the current index may have moved, the old checkpoint doesn't match the queue anymore
+        persistPosition();
+        prefetchUpcoming();
+    }
+
+    /**
+     * Caches the start of the songs played next, see {@link CachePrefetcher}.
+     */
+    private void prefetchUpcoming() {
+        if (playlist == null || playlist.getSize() <= 0) {
+            cachePrefetcher.cancel();
+            return;
+        }
+        cachePrefetcher.prefetch(getSongByIndex(playlist.getCurrentIndex()), playlist.getUpcomingMedia(cachePrefetcher.getItemCount()));
+    }
+
+    /**
+     * @see CachePrefetcher#setLimits(int, long, long)
+     */
+    void setPrefetchLimits(int itemCount, long bytesPerItem, long budgetBytes) {
+        cachePrefetcher.setLimits(itemCount, bytesPerItem, budgetBytes);
+        prefetchUpcoming();
+    }
+
+    /**
+     * @param crossfadeMs overlap of consecutive songs, 0 for gapless transitions. Either way
+     *                    each transition is reported with its gap and overlap.
+     * @see CrossfadeEngine
+     */
+    void setCrossfade(long crossfadeMs) {
+        crossfadeEngine.setCrossfade(crossfadeMs);
+    }
+
+    /**
+     * @see SkipLatencyTracker#getLatencies(boolean)
+     */
+    Map<String, Object> getSkipLatencies(boolean reset) {
+        return skipLatencyTracker.getLatencies(reset);
+    }
+
+    /**
+     * Appends the playlist changes since the revision to the queue store.
+     */
+    private void persistQueue(long baseRevision) {
+        ArrayList<Map<String, Object>> deltas = playlist.deltasSince(baseRevision);
+        if (deltas == null || queueStore.shouldWriteSnapshot()) {
+            writeQueueSnapshot();
+        } else {
+            queueStore.appendDeltas(deltas);
+        }
+    }
+
+    private void persistPosition() {
+        if (playlist == null || playlist.getSize() <= 0) {
+            return;
+        }
+
+        queueStore.writeCheckpoint(playlist.getCurrentIndex(), simpleExoPlayer.getCurrentPosition());
+    }
+
+    private void writeQueueSnapshot() {
+        queueStore.writeSnapshot(playlist.getPlaylistName(), new ArrayList<>(playlist.getMediaList()),
+                Math.max(0, playlist.getCurrentIndex()), simpleExoPlayer.getCurrentPosition());
+    }
+
     boolean playNext(@NonNull Song song) {
         if (simpleExoPlayer.getPlaybackState() == Player.STATE_IDLE || playlist == null) {
             return false;
         }
 
-        int index = simpleExoPlayer.getCurrentWindowIndex() + 1;
+        int index = playlist.getCurrentIndex() + 1;
+        long baseRevision = playlist.getRevision();
         if (playlist.addMediaAtIndex(index, song)) {
             audioExoPlayerListener.onMediaAddedToPlaylist(playlist.getPlaylistName(), index, song);
+            onQueueChanged(baseRevision);
             return true;
         }
 
@@ -297,6 +723,7 @@ class AudioPlayer {
         if (playlist == null) {
             return false;
         }
+        long baseRevision = playlist.getRevision();
         boolean isAdded = playlist.addMediaAtIndex(index, song, new Runnable() {
             @Override
             public void run() {
@@ -308,6 +735,7 @@ class AudioPlayer {
 
         if (isAdded) {
             audioExoPlayerListener.onMediaAddedToPlaylist(playlist.getPlaylistName(), index, song);
+            onQueueChanged(baseRevision);
         }
 
         return isAdded;
@@ -318,19 +746,240 @@ class AudioPlayer {
             return false;
         }
 
+        long baseRevision = playlist.getRevision();
         if (playlist.removeMediaAtIndex(song, index)) {
             audioExoPlayerListener.onMediaRemovedFromPlaylist(playlist.getPlaylistName(), index, song);
+            onQueueChanged(baseRevision);
             return true;
         }
         return false;
     }
 
+    /**
+     * @return the first index of the song with the key, -1 if it is not queued
+     */
+    int indexOfKey(@NonNull String key) {
+        return playlist != null ? playlist.indexOfKey(key) : -1;
+    }
+
+    boolean containsKey(@NonNull String key) {
+        return playlist != null && playlist.containsKey(key);
+    }
+
+    /**
+     * @return queue indices of up to limit songs whose title, artists or album words start with
+     * the query words
+     */
+    int[] searchQueue(@NonNull String query, int limit) {
+        return playlist != null ? playlist.search(query, limit) : new int[0];
+    }
+
+    /**
+     * Removes the first song with the key.
+     */
+    boolean removeByKey(@NonNull String key) {
+        int index = indexOfKey(key);
+        if (index < 0) {
+            return false;
+        }
+        return removeSongFromIndex(playlist.getMediaAtIndex(index), index);
+    }
+
+    /**
+     * Applies all commands of a batch or none of them. The commands are first replayed against a
+     * copy of the queue keys, so an out of range index or a key mismatch rejects the whole batch
+     * before the playlist is touched. A single onPlaylistDelta event is sent afterwards.
+     *
+     * @return one result per command, or null if the batch is rejected
+     */
+    ArrayList<Object> applyBatch(@NonNull List<PlaylistCommand> commands) {
+        if (playlist == null) {
+            return null;
+        }
+
+        boolean isIdle = simpleExoPlayer.getPlaybackState() == Player.STATE_IDLE;
+        ArrayList<String> keys = new ArrayList<>(playlist.getSize());
+        for (int i = 0; i < playlist.getSize(); i++) {
+            keys.add(playlist.getMediaAtIndex(i).getKey());
+        }
+
+        int currentIndex = playlist.getCurrentIndex();
+        int skipIndex = -1;
+        int lastStructuralCommand = -1;
+        int[] indices = new int[commands.size()];
+        for (int i = 0; i < commands.size(); i++) {
+            PlaylistCommand command = commands.get(i);
+            int index = command.index;
+            switch (command.method) {
+                case PlaylistCommand.PLAY_NEXT:
+                case PlaylistCommand.ADD_SONG_AT_INDEX:
+                    if (command.method.equals(PlaylistCommand.PLAY_NEXT)) {
+                        if (isIdle) {
+                            Log.e(TAG, "batch: can't play next while player is idle");
+                            return null;
+                        }
+                        index = currentIndex + 1;
+                    }
+                    if (index < 0 || index > keys.size()) {
+                        Log.e(TAG, "batch: " + index + " is out of bound. MediaList size: " + keys.size());
+                        return null;
+                    }
+                    keys.add(index, command.song.getKey());
+                    if (index <= currentIndex) {
+                        currentIndex++;
+                    }
+                    if (index <= skipIndex) {
+                        skipIndex++;
+                    }
+                    if (command.shouldPlay) {
+                        skipIndex = index;
+                    }
+                    lastStructuralCommand = i;
+                    break;
+                case PlaylistCommand.REMOVE_SONG_FROM_INDEX:
+                    if (index < 0 || index >= keys.size() || !keys.get(index).equals(command.song.getKey())) {
+                        Log.e(TAG, "batch: can't remove " + command.song.getKey() + " from index " + index);
+                        return null;
+                    }
+                    keys.remove(index);
+                    if (index < currentIndex) {
+                        currentIndex--;
+                    }
+                    if (index < skipIndex) {
+                        skipIndex--;
+                    }
+                    lastStructuralCommand = i;
+                    break;
+                case PlaylistCommand.SKIP_TO_INDEX:
+                    if (index < 0 || index >= keys.size()) {
+                        Log.e(TAG, "batch: can't skip to index " + index + ", MediaPlaylist size: " + keys.size());
+                        return null;
+                    }
+                    currentIndex = index;
+                    skipIndex = index;
+                    break;
+            }
+            indices[i] = index;
+        }
+
+        if (skipIndex >= keys.size() || isIdle) {
+            skipIndex = -1;
+        }
+
+        if (lastStructuralCommand < 0) {
+            if (skipIndex >= 0) {
+                playlist.skipToIndex(skipIndex);
+            }
+            ArrayList<Object> results = new ArrayList<>(commands.size());
+            for (int i = 0; i < commands.size(); i++) {
+                results.add(null);
+            }
+            return results;
+        }
+
+        // New windows are only known to the player once the playlist changes are handled,
+        // so the requested skip runs after the last structural change completes.
+        final int pendingSkipIndex = skipIndex;
+        Runnable actionOnCompletion = new Runnable() {
+            @Override
+            public void run() {
+                if (pendingSkipIndex >= 0 && playlist != null) {
+                    playlist.skipToIndex(pendingSkipIndex);
+                }
+            }
+        };
+
+        long baseRevision = playlist.getRevision();
+        ArrayList<Object> results = new ArrayList<>(commands.size());
+        for (int i = 0; i < commands.size(); i++) {
+            PlaylistCommand command = commands.get(i);
+            if (!command.isStructural()) {
+                results.add(null);
+                continue;
+            }
+
+            boolean isApplied;
+            if (command.method.equals(PlaylistCommand.REMOVE_SONG_FROM_INDEX)) {
+                isApplied = i == lastStructuralCommand
+                        ? playlist.removeMediaAtIndex(command.song, indices[i], actionOnCompletion)
+                        : playlist.removeMediaAtIndex(command.song, indices[i]);
+            } else {
+                isApplied = i == lastStructuralCommand
+                        ? playlist.addMediaAtIndex(indices[i], command.song, actionOnCompletion)
+                        : playlist.addMediaAtIndex(indices[i], command.song);
+            }
+            results.add(isApplied);
+        }
+
+        notifyPlaylistDelta(baseRevision);
+        return results;
+    }
+
+    boolean addSongsAtIndex(final int index, @NonNull List<Song> songs, final boolean shouldPlay) {
+        if (playlist == null) {
+            return false;
+        }
+
+        long baseRevision = playlist.getRevision();
+        boolean isAdded = playlist.addMediaAtIndex(index, songs, new Runnable() {
+            @Override
+            public void run() {
+                if (shouldPlay && playlist != null) {
+                    playlist.skipToIndex(index);
+                }
+            }
+        });
+
+        if (isAdded) {
+            notifyPlaylistDelta(baseRevision);
+        }
+        return isAdded;
+    }
+
+    boolean removeRange(int from, int to) {
+        if (playlist == null) {
+            return false;
+        }
+
+        long baseRevision = playlist.getRevision();
+        boolean isRemoved = playlist.removeMediaRange(from, to, null);
+
+        if (isRemoved) {
+            notifyPlaylistDelta(baseRevision);
+        }
+        return isRemoved;
+    }
+
+    boolean moveRange(int from, int to, int newIndex) {
+        if (playlist == null) {
+            return false;
+        }
+
+        long baseRevision = playlist.getRevision();
+        boolean isMoved = playlist.moveMediaRange(from, to, newIndex, null);
+
+        if (isMoved) {
+            notifyPlaylistDelta(baseRevision);
+        }
+        return isMoved;
+    }
+
+    private void notifyPlaylistDelta(long baseRevision) {
+        ArrayList<Map<String, Object>> deltas = playlist.deltasSince(baseRevision);
+        if (deltas != null) {
+            audioExoPlayerListener.onPlaylistDelta(playlist, deltas);
+        } else {
+            audioExoPlayerListener.onPlaylistChanged(playlist);
+        }
+        onQueueChanged(baseRevision);
+    }
+
     private class AudioExoPlayerListener extends MediaExoPlayerListener<Song> {
         AudioExoPlayerListener() {
             super(simpleExoPlayer, AUDIO_EXO_PLAYER_LISTENER_THREAD_NAME);
         }
 
-        void onInitialized() {
+        void onInitialized(long knownRevision) {
             if (simpleExoPlayer == null) {
                 return;
             }
@@ -346,15 +995,15 @@ class AudioPlayer {
             args.put("repeatMode", repeatMode);
             args.put("shuffleModeEnabled", shuffleModeEnabled);
 
-            int windowIndex = simpleExoPlayer.getCurrentWindowIndex();
+            int windowIndex = playlist != null ? playlist.getCurrentIndex() : simpleExoPlayer.getCurrentWindowIndex();
 
             if (playlist != null && playlist.getSize() > 0) {
-                JSONObject jsonObject = playlist.toJson();
-                if (jsonObject != null) {
-                    String playlistJson = jsonObject.toString();
-                    args.put("playlist", playlistJson);
-                } else {
-                    windowIndex = -1;
+                args.put("revision", playlist.getRevision());
+                if (isPlaylistPaged) {
+                    args.put("playlistName", playlist.getPlaylistName());
+                    args.put("playlistSize", playlist.getSize());
+                } else if (knownRevision != playlist.getRevision()) {
+                    args.put("playlistBytes", PlaylistCodec.encode(playlist.getPlaylistName(), playlist.getMediaList()));
                 }
             } else {
                 windowIndex = -1;
@@ -362,25 +1011,53 @@ class AudioPlayer {
 
             args.put("windowIndex", windowIndex);
 
-            int nextWindowIndex = simpleExoPlayer.getNextWindowIndex();
+            int nextWindowIndex = playlist != null ? playlist.getNextIndex() : simpleExoPlayer.getNextWindowIndex();
             args.put("nextWindowIndex", nextWindowIndex);
 
             String method = AUDIO_METHOD_TYPE + "/onInitialized";
-            channel.invokeMethod(method, args);
+            eventBus.send(method, args);
+            onPlaylistWindow();
         }
 
         @Override
         void onPlaylistChanged(@NonNull Playlist<Song> playlist) {
-            JSONObject jsonObject = playlist.toJson();
-            if (jsonObject != null) {
-//                Log.d(TAG, "media size: " + playlist.getSize() + ", " + jsonObject.toString());
-                String playlistJson = jsonObject.toString();
+            Map<String, Object> args = new HashMap<>();
+            if (isPlaylistPaged) {
+                args.put("playlistName", playlist.getPlaylistName());
+                args.put("playlistSize", playlist.getSize());
+            } else {
+                args.put("playlistBytes", PlaylistCodec.encode(playlist.getPlaylistName(), playlist.getMediaList()));
+            }
+            args.put("revision", playlist.getRevision());
+            String method = AUDIO_METHOD_TYPE + "/onPlaylistChanged";
+            eventBus.send(method, args);
+            onPlaylistWindow();
+        }
 
-                Map<String, Object> args = new HashMap<>();
-                args.put("playlist", playlistJson);
-                String method = AUDIO_METHOD_TYPE + "/onPlaylistChanged";
-                channel.invokeMethod(method, args);
+        void onPlaylistWindow() {
+            if (!isPlaylistPaged || playlistWindowLimit <= 0) {
+                return;
             }
+
+            int size = playlist != null ? playlist.getSize() : 0;
+            Map<String, Object> args = getPlaylistPage(Math.min(playlistWindowOffset, size), playlistWindowLimit);
+            if (args == null) {
+                return;
+            }
+            String method = AUDIO_METHOD_TYPE + "/onPlaylistWindow";
+            eventBus.send(method, args);
+        }
+
+        @Override
+        void onPlaylistDelta(@NonNull Playlist<Song> playlist, @NonNull List<Map<String, Object>> deltas) {
+            Map<String, Object> args = new HashMap<>();
+            args.put("playlistName", playlist.getPlaylistName());
+            args.put("revision", playlist.getRevision());
+            args.put("playlistSize", playlist.getSize());
+            args.put("deltas", deltas);
+            String method = AUDIO_METHOD_TYPE + "/onPlaylistDelta";
+            eventBus.send(method, args);
+            onPlaylistWindow();
         }
 
         @Override
@@ -391,8 +1068,10 @@ class AudioPlayer {
             args.put("playlistName", playlistName);
             args.put("index", index);
             args.put("song", songMap);
+            putDeltaRevisions(args);
             String method = AUDIO_METHOD_TYPE + "/onMediaAddedToPlaylist";
-            channel.invokeMethod(method, args);
+            eventBus.send(method, args);
+            onPlaylistWindow();
         }
 
         @Override
@@ -403,8 +1082,23 @@ class AudioPlayer {
             args.put("playlistName", playlistName);
             args.put("index", index);
             args.put("song", songMap);
+            putDeltaRevisions(args);
             String method = AUDIO_METHOD_TYPE + "/onMediaRemovedFromPlaylist";
-            channel.invokeMethod(method, args);
+            eventBus.send(method, args);
+            onPlaylistWindow();
+        }
+
+        private void putDeltaRevisions(Map<String, Object> args) {
+            Map<String, Object> delta = playlist.getLastDelta();
+            if (delta != null) {
+                args.put("baseRevision", delta.get("baseRevision"));
+                args.put("revision", delta.get("revision"));
+            }
+        }
+
+        @Override
+        int getCurrentMediaIndex() {
+            return playlist != null ? playlist.getCurrentIndex() : super.getCurrentMediaIndex();
         }
 
         @Override
@@ -412,15 +1106,18 @@ class AudioPlayer {
             super.onMediaPeriodCreated(windowIndex);
 
             Map<String, Object> args = new HashMap<>();
-            args.put("windowIndex", windowIndex);
+            args.put("windowIndex", playlist != null ? playlist.indexOfWindow(windowIndex) : windowIndex);
 
             String method = AUDIO_METHOD_TYPE + "/onMediaPeriodCreated";
-            channel.invokeMethod(method, args);
+            eventBus.send(method, args);
         }
 
         @Override
         public void onTimelineChanged(Timeline timeline, Object manifest, int reason) {
             super.onTimelineChanged(timeline, manifest, reason);
+            if (playlist != null) {
+                playlist.onCurrentWindowChanged();
+            }
 //            Log.d(TAG, "onTimelineChanged");
         }
 
@@ -428,21 +1125,27 @@ class AudioPlayer {
         public void onTracksChanged(TrackGroupArray trackGroups, TrackSelectionArray trackSelections) {
             super.onTracksChanged(trackGroups, trackSelections);
 
-            int windowIndex = simpleExoPlayer.getCurrentWindowIndex();
-            int nextWindowIndex = simpleExoPlayer.getNextWindowIndex();
+            int windowIndex = playlist.getCurrentIndex();
+            if (windowIndex < 0) {
+                return;
+            }
+            int nextWindowIndex = playlist.getNextIndex();
             Song song = playlist.getMediaAtIndex(windowIndex);
             if (song == null)
                 return;
 
             Map<String, Object> songMap = song.toMap();
 
+            persistPosition();
+            prefetchUpcoming();
+
             Map<String, Object> args = new HashMap<>();
             args.put("windowIndex", windowIndex);
             args.put("nextWindowIndex", nextWindowIndex);
             args.put("playingSong", songMap);
 
             String method = AUDIO_METHOD_TYPE + "/onTracksChanged";
-            channel.invokeMethod(method, args);
+            eventBus.send(method, args);
         }
 
         @Override
@@ -467,46 +1170,64 @@ class AudioPlayer {
             }
 
             super.onPlayerStateChanged(playWhenReady, playbackState);
+            persistPosition();
+            checkpointHandler.removeCallbacks(checkpointTick);
+            if (playWhenReady && playbackState == Player.STATE_READY) {
+                checkpointHandler.postDelayed(checkpointTick, POSITION_SAVE_INTERVAL_MS);
+            }
 
             Map<String, Object> args = new HashMap<>();
             args.put("playWhenReady", playWhenReady);
             args.put("playbackState", playbackState);
             String method = AUDIO_METHOD_TYPE + "/onPlayerStateChanged";
 //                Log.d(TAG, "onPlayerStateChanged : " + playbackState + ", " + method);
-            channel.invokeMethod(method, args);
+            eventBus.send(method, args);
         }
 
         @Override
         public void onRepeatModeChanged(int repeatMode) {
             super.onRepeatModeChanged(repeatMode);
+            if (playlist != null) {
+                playlist.onPlayOrderChanged();
+            }
+            prefetchUpcoming();
 
-            int nextWindowIndex = simpleExoPlayer.getNextWindowIndex();
+            int nextWindowIndex = playlist != null ? playlist.getNextIndex() : simpleExoPlayer.getNextWindowIndex();
 
             Map<String, Object> args = new HashMap<>();
             args.put("repeatMode", repeatMode);
             args.put("nextWindowIndex", nextWindowIndex);
             String method = AUDIO_METHOD_TYPE + "/onRepeatModeChanged";
-            channel.invokeMethod(method, args);
+            eventBus.send(method, args);
         }
 
         @Override
         public void onShuffleModeEnabledChanged(boolean shuffleModeEnabled) {
             super.onShuffleModeEnabledChanged(shuffleModeEnabled);
+            if (playlist != null) {
+                playlist.onPlayOrderChanged();
+            }
+            prefetchUpcoming();
 
-            int nextWindowIndex = simpleExoPlayer.getNextWindowIndex();
+            int nextWindowIndex = playlist != null ? playlist.getNextIndex() : simpleExoPlayer.getNextWindowIndex();
 
             Map<String, Object> args = new HashMap<>();
             args.put("shuffleModeEnabled", shuffleModeEnabled);
             args.put("nextWindowIndex", nextWindowIndex);
 
             String method = AUDIO_METHOD_TYPE + "/onShuffleModeEnabledChanged";
-            channel.invokeMethod(method, args);
+            eventBus.send(method, args);
         }
 
         @Override
         public void onPositionDiscontinuity(int reason) {
 //            Log.d(TAG, "onPositionDiscontinuity");
             super.onPositionDiscontinuity(reason);
+            if (playlist != null) {
+                playlist.onCurrentWindowChanged();
+            }
+            // a repeated media starts over without a track or playback state change
+            persistPosition();
         }
 
         @Override
@@ -519,6 +1240,7 @@ class AudioPlayer {
         public void onSeekProcessed() {
             Log.d(TAG, "onSeekProcessed");
             super.onSeekProcessed();
+            persistPosition();
         }
 
         @Override
@@ -531,7 +1253,7 @@ class AudioPlayer {
             args.put("audioLength", audioLength);
             String method = AUDIO_METHOD_TYPE + "/onPlaybackUpdate";
 //                Log.d(TAG, "Playback update");
-            channel.invokeMethod(method, args);
+            eventBus.send(method, args);
         }
 
         @Override
@@ -542,7 +1264,7 @@ class AudioPlayer {
             Map<String, Object> args = new HashMap<>();
             args.put("percent", percent);
             String method = AUDIO_METHOD_TYPE + "/onBufferedUpdate";
-            channel.invokeMethod(method, args);
+            eventBus.send(method, args);
         }
 
         @Override
@@ -552,7 +1274,7 @@ class AudioPlayer {
             Map<String, Object> args = new HashMap<>();
             args.put("message", message);
             String method = AUDIO_METHOD_TYPE + "/onPlayerStatus";
-            channel.invokeMethod(method, args);
+            eventBus.send(method, args);
         }
 
         @Override
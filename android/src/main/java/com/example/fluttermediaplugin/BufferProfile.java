@@ -0,0 +1,121 @@
+package com.example.fluttermediaplugin;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+
+import java.util.Map;
+
+/**
+ * Buffer durations and byte target of a player's DefaultLoadControl. A profile starts from a
+ * named preset and overrides single values of it:
+ * <ul>
+ * <li>lowMemory: small buffers, for music</li>
+ * <li>lowLatencyStart: playback starts with little buffered</li>
+ * <li>resilient: large buffers and a back buffer, for video over flaky networks</li>
+ * </ul>
+ */
+final class BufferProfile {
+    static final BufferProfile DEFAULT = new BufferProfile(DefaultLoadControl.DEFAULT_MIN_BUFFER_MS,
+            DefaultLoadControl.DEFAULT_MAX_BUFFER_MS, DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_MS,
+            DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS, C.LENGTH_UNSET, 0);
+    static final BufferProfile LOW_MEMORY = new BufferProfile(5000, 15000, 1000, 2000, 2 * 1024 * 1024, 0);
+    static final BufferProfile LOW_LATENCY_START = new BufferProfile(DefaultLoadControl.DEFAULT_MIN_BUFFER_MS,
+            DefaultLoadControl.DEFAULT_MAX_BUFFER_MS, 500, 1500, C.LENGTH_UNSET, 0);
+    static final BufferProfile RESILIENT = new BufferProfile(30000, 120000, 2500, 5000, C.LENGTH_UNSET, 30000);
+
+    private static final String PRESET_TAG = "preset";
+    private static final String MIN_BUFFER_MS_TAG = "minBufferMs";
+    private static final String MAX_BUFFER_MS_TAG = "maxBufferMs";
+    private static final String BUFFER_FOR_PLAYBACK_MS_TAG = "bufferForPlaybackMs";
+    private static final String BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS_TAG = "bufferForPlaybackAfterRebufferMs";
+    private static final String TARGET_BUFFER_BYTES_TAG = "targetBufferBytes";
+    private static final String BACK_BUFFER_MS_TAG = "backBufferMs";
+
+    final int minBufferMs;
+    final int maxBufferMs;
+    // buffered media needed to start playback, after a seek and after a rebuffer
+    final int bufferForPlaybackMs;
+    final int bufferForPlaybackAfterRebufferMs;
+    // C.LENGTH_UNSET to derive it from the selected tracks
+    final int targetBufferBytes;
+    // read by a player only when it is created
+    final int backBufferMs;
+
+    private BufferProfile(int minBufferMs, int maxBufferMs, int bufferForPlaybackMs, int bufferForPlaybackAfterRebufferMs, int targetBufferBytes, int backBufferMs) {
+        this.minBufferMs = minBufferMs;
+        this.maxBufferMs = maxBufferMs;
+        this.bufferForPlaybackMs = bufferForPlaybackMs;
+        this.bufferForPlaybackAfterRebufferMs = bufferForPlaybackAfterRebufferMs;
+        this.targetBufferBytes = targetBufferBytes;
+        this.backBufferMs = backBufferMs;
+    }
+
+    DefaultLoadControl createLoadControl(@NonNull DefaultAllocator allocator) {
+        return new DefaultLoadControl.Builder()
+                .setAllocator(allocator)
+                .setBufferDurationsMs(minBufferMs, maxBufferMs, bufferForPlaybackMs, bufferForPlaybackAfterRebufferMs)
+                .setTargetBufferBytes(targetBufferBytes)
+                .setBackBuffer(backBufferMs, true)
+                .createDefaultLoadControl();
+    }
+
+    /**
+     * Missing entries keep the value of the preset, which is the default one if there is no
+     * preset.
+     *
+     * @return null if the preset is unknown, an entry is not an integer or the durations
+     * contradict each other
+     */
+    static BufferProfile fromMap(@NonNull Map<String, Object> map) {
+        Object presetName = map.get(PRESET_TAG);
+        BufferProfile preset = presetName == null ? DEFAULT : presetOf(presetName);
+        if (preset == null) {
+            return null;
+        }
+
+        Object minBufferMs = valueOrDefault(map, MIN_BUFFER_MS_TAG, preset.minBufferMs);
+        Object maxBufferMs = valueOrDefault(map, MAX_BUFFER_MS_TAG, preset.maxBufferMs);
+        Object bufferForPlaybackMs = valueOrDefault(map, BUFFER_FOR_PLAYBACK_MS_TAG, preset.bufferForPlaybackMs);
+        Object bufferForPlaybackAfterRebufferMs = valueOrDefault(map, BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS_TAG, preset.bufferForPlaybackAfterRebufferMs);
+        Object targetBufferBytes = valueOrDefault(map, TARGET_BUFFER_BYTES_TAG, preset.targetBufferBytes);
+        Object backBufferMs = valueOrDefault(map, BACK_BUFFER_MS_TAG, preset.backBufferMs);
+        if (!(minBufferMs instanceof Integer) || !(maxBufferMs instanceof Integer)
+                || !(bufferForPlaybackMs instanceof Integer) || !(bufferForPlaybackAfterRebufferMs instanceof Integer)
+                || !(targetBufferBytes instanceof Integer) || !(backBufferMs instanceof Integer)) {
+            return null;
+        }
+
+        BufferProfile profile = new BufferProfile((Integer) minBufferMs, (Integer) maxBufferMs, (Integer) bufferForPlaybackMs,
+                (Integer) bufferForPlaybackAfterRebufferMs, (Integer) targetBufferBytes, (Integer) backBufferMs);
+        return profile.isValid() ? profile : null;
+    }
+
+    // the assertions of DefaultLoadControl.Builder
+    private boolean isValid() {
+        return bufferForPlaybackMs >= 0 && bufferForPlaybackAfterRebufferMs >= 0
+                && minBufferMs >= bufferForPlaybackMs && minBufferMs >= bufferForPlaybackAfterRebufferMs
+                && maxBufferMs >= minBufferMs && backBufferMs >= 0
+                && (targetBufferBytes == C.LENGTH_UNSET || targetBufferBytes > 0);
+    }
+
+    private static BufferProfile presetOf(Object name) {
+        if ("default".equals(name)) {
+            return DEFAULT;
+        } else if ("lowMemory".equals(name)) {
+            return LOW_MEMORY;
+        } else if ("lowLatencyStart".equals(name)) {
+            return LOW_LATENCY_START;
+        } else if ("resilient".equals(name)) {
+            return RESILIENT;
+        }
+        return null;
+    }
+
+    private static Object valueOrDefault(Map<String, Object> map, String key, int defaultValue) {
+        Object value = map.get(key);
+        return value != null ? value : defaultValue;
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.fluttermediaplugin;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.fluttermediaplugin.Media.Media;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheUtil;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caches the start of the media played next, so a skip to them starts from disk. Prefetches
+ * of media which are no longer upcoming are canceled. The bytes fetched this way are bounded
+ * by a budget; beyond it the least recently prefetched media are removed from the cache
+ * again, unless they are upcoming, playing or downloaded.
+ * <p>
+ * Methods are called from the main thread, prefetches run on their own threads.
+ */
+final class CachePrefetcher {
+    private static final String TAG = "CachePrefetcher";
+    private static final int MAX_CONCURRENT_PREFETCHES = 2;
+
+    private static final class Prefetch {
+        final Media media;
+        final AtomicBoolean isCanceled = new AtomicBoolean();
+        Future<?> future;
+
+        Prefetch(Media media) {
+            this.media = media;
+        }
+    }
+
+    private static final class Prefetched {
+        final Media media;
+        long bytes;
+
+        Prefetched(Media media) {
+            this.media = media;
+        }
+    }
+
+    private final Cache cache;
+    private final DataSource.Factory upstreamFactory;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newFixedThreadPool(MAX_CONCURRENT_PREFETCHES, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            Thread thread = new Thread(runnable, "flutter_media_prefetch_" + count.incrementAndGet());
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    private int itemCount = 3;
+    private long bytesPerItem = 512 * 1024;
+    private long budgetBytes = 32 * 1024 * 1024;
+
+    // running and queued prefetches by cache key
+    private final HashMap<String, Prefetch> prefetches = new HashMap<>();
+    // bytes fetched for each prefetched media, least recently prefetched first
+    private final LinkedHashMap<String, Prefetched> prefetched = new LinkedHashMap<>(16, 0.75f, true);
+    private long prefetchedBytes = 0;
+    // keys of the playing and upcoming media, which are never removed from the cache
+    private final HashSet<String> protectedKeys = new HashSet<>();
+
+    CachePrefetcher(@NonNull Cache cache, @NonNull DataSource.Factory upstreamFactory) {
+        this.cache = cache;
+        this.upstreamFactory = upstreamFactory;
+    }
+
+    /**
+     * @param itemCount    upcoming media to prefetch, 0 disables prefetching
+     * @param bytesPerItem bytes cached from the start of each of them
+     * @param budgetBytes  bytes all prefetched media may take in the cache
+     */
+    void setLimits(int itemCount, long bytesPerItem, long budgetBytes) {
+        this.itemCount = itemCount;
+        this.bytesPerItem = bytesPerItem;
+        this.budgetBytes = budgetBytes;
+        trimToBudget();
+    }
+
+    int getItemCount() {
+        return itemCount;
+    }
+
+    /**
+     * Prefetches the upcoming media and cancels the prefetches of media which are no longer
+     * upcoming.
+     *
+     * @param upcoming media in the order they are played next
+     */
+    void prefetch(@Nullable Media current, @NonNull List<? extends Media> upcoming) {
+        protectedKeys.clear();
+        if (current != null) {
+            protectedKeys.add(keyOf(current));
+        }
+        for (int i = 0; i < upcoming.size() && i < itemCount; i++) {
+            protectedKeys.add(keyOf(upcoming.get(i)));
+        }
+
+        Iterator<Map.Entry<String, Prefetch>> iterator = prefetches.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Prefetch> entry = iterator.next();
+            if (!protectedKeys.contains(entry.getKey())) {
+                entry.getValue().isCanceled.set(true);
+                entry.getValue().future.cancel(false);
+                iterator.remove();
+            }
+        }
+
+        for (int i = 0; i < upcoming.size() && i < itemCount; i++) {
+            Media media = upcoming.get(i);
+            String key = keyOf(media);
+            // a lookup marks already prefetched media as recently used
+            if (!prefetches.containsKey(key) && prefetched.get(key) == null) {
+                start(key, media);
+            }
+        }
+    }
+
+    void cancel() {
+        for (Prefetch prefetch : prefetches.values()) {
+            prefetch.isCanceled.set(true);
+            prefetch.future.cancel(false);
+        }
+        prefetches.clear();
+        protectedKeys.clear();
+    }
+
+    private void start(final String key, Media media) {
+        final Prefetch prefetch = new Prefetch(media);
+        final long length = bytesPerItem;
+        prefetch.future = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                final long[] newBytes = new long[1];
+                try {
+                    CacheUtil.cache(new DataSpec(Uri.parse(key), 0, length, null), cache, null,
+                            upstreamFactory.createDataSource(), new CacheUtil.ProgressListener() {
+                                @Override
+                                public void onProgress(long requestLength, long bytesCached, long newBytesCached) {
+                                    newBytes[0] += newBytesCached;
+                                }
+                            }, prefetch.isCanceled);
+                } catch (InterruptedException e) {
+                    // canceled, the bytes fetched so far are still counted
+                } catch (IOException e) {
+                    Log.w(TAG, "Prefetch of " + key + " failed", e);
+                }
+
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPrefetched(key, prefetch, newBytes[0]);
+                    }
+                });
+            }
+        });
+        prefetches.put(key, prefetch);
+    }
+
+    private void onPrefetched(String key, Prefetch prefetch, long newBytes) {
+        if (prefetches.get(key) == prefetch) {
+            prefetches.remove(key);
+        }
+
+        Prefetched entry = prefetched.get(key);
+        if (entry == null) {
+            entry = new Prefetched(prefetch.media);
+            prefetched.put(key, entry);
+        }
+        entry.bytes += newBytes;
+        prefetchedBytes += newBytes;
+        trimToBudget();
+    }
+
+    private void trimToBudget() {
+        DownloadManager downloadManager = FlutterMediaPlugin.getInstance().getDownloadManager();
+        Iterator<Map.Entry<String, Prefetched>> iterator = prefetched.entrySet().iterator();
+        while (prefetchedBytes > budgetBytes && iterator.hasNext()) {
+            Map.Entry<String, Prefetched> entry = iterator.next();
+            final String key = entry.getKey();
+            if (protectedKeys.contains(key) || prefetches.containsKey(key)) {
+                continue;
+            }
+
+            prefetchedBytes -= entry.getValue().bytes;
+            iterator.remove();
+            if (downloadManager != null && downloadManager.isDownloaded(entry.getValue().media)) {
+                // the download owns these bytes now
+                continue;
+            }
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    CacheUtil.remove(cache, key);
+                }
+            });
+        }
+    }
+
+    private static String keyOf(Media media) {
+        // the default cache key of the playlist's cache data sources
+        return media.getUrl();
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.fluttermediaplugin;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel.Result;
+import io.flutter.plugin.common.StandardMethodCodec;
+
+/**
+ * Opt-in traffic metrics of the plugin channel. For every inbound method it records the
+ * invocation count, a histogram of the time until its result completes and the encoded size
+ * of its arguments. Outbound events record the time they were pending in the event bus and
+ * their encoded size. Payloads are only encoded while the metrics are enabled.
+ * <p>
+ * Only used from the main thread.
+ */
+final class ChannelMetrics {
+    // upper bounds of the latency buckets, the last bucket has no upper bound
+    private static final long[] LATENCY_BUCKET_BOUNDS_US = {
+            50, 100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000, 100000
+    };
+
+    private static final class Stats {
+        long count;
+        long totalLatencyUs;
+        long maxLatencyUs;
+        final long[] latencyHistogram = new long[LATENCY_BUCKET_BOUNDS_US.length + 1];
+        long totalBytes;
+        long maxBytes;
+
+        void record(long latencyUs, long bytes) {
+            count++;
+            totalLatencyUs += latencyUs;
+            maxLatencyUs = Math.max(maxLatencyUs, latencyUs);
+            int bucket = 0;
+            while (bucket < LATENCY_BUCKET_BOUNDS_US.length && latencyUs >= LATENCY_BUCKET_BOUNDS_US[bucket]) {
+                bucket++;
+            }
+            latencyHistogram[bucket]++;
+            totalBytes += bytes;
+            maxBytes = Math.max(maxBytes, bytes);
+        }
+
+        Map<String, Object> toMap() {
+            ArrayList<Long> histogram = new ArrayList<>(latencyHistogram.length);
+            for (long bucketCount : latencyHistogram) {
+                histogram.add(bucketCount);
+            }
+
+            Map<String, Object> map = new HashMap<>();
+            map.put("count", count);
+            map.put("totalLatencyUs", totalLatencyUs);
+            map.put("maxLatencyUs", maxLatencyUs);
+            map.put("latencyHistogram", histogram);
+            map.put("totalBytes", totalBytes);
+            map.put("maxBytes", maxBytes);
+            return map;
+        }
+    }
+
+    private boolean isEnabled = false;
+    private final HashMap<String, Stats> inboundStats = new HashMap<>();
+    private final HashMap<String, Stats> outboundStats = new HashMap<>();
+
+    boolean isEnabled() {
+        return isEnabled;
+    }
+
+    void setEnabled(boolean enabled) {
+        isEnabled = enabled;
+    }
+
+    void reset() {
+        inboundStats.clear();
+        outboundStats.clear();
+    }
+
+    /**
+     * @return a result which records the latency of the call once it completes
+     */
+    Result track(@NonNull final MethodCall call, @NonNull final Result result) {
+        final long bytes = encodedSize(call.method, call.arguments);
+        final long startNanos = SystemClock.elapsedRealtimeNanos();
+        return new Result() {
+            @Override
+            public void success(Object value) {
+                onComplete();
+                result.success(value);
+            }
+
+            @Override
+            public void error(String errorCode, String errorMessage, Object errorDetails) {
+                onComplete();
+                result.error(errorCode, errorMessage, errorDetails);
+            }
+
+            @Override
+            public void notImplemented() {
+                onComplete();
+                result.notImplemented();
+            }
+
+            private void onComplete() {
+                long latencyUs = (SystemClock.elapsedRealtimeNanos() - startNanos) / 1000;
+                stats(inboundStats, call.method).record(latencyUs, bytes);
+            }
+        };
+    }
+
+    void recordOutbound(@NonNull String method, Object arguments, long pendingNanos) {
+        stats(outboundStats, method).record(pendingNanos / 1000, encodedSize(method, arguments));
+    }
+
+    Map<String, Object> snapshot() {
+        ArrayList<Long> bounds = new ArrayList<>(LATENCY_BUCKET_BOUNDS_US.length);
+        for (long bound : LATENCY_BUCKET_BOUNDS_US) {
+            bounds.add(bound);
+        }
+
+        Map<String, Object> snapshot = new HashMap<>();
+        snapshot.put("enabled", isEnabled);
+        snapshot.put("latencyBucketBoundsUs", bounds);
+        snapshot.put("inbound", toMap(inboundStats));
+        snapshot.put("outbound", toMap(outboundStats));
+        return snapshot;
+    }
+
+    private static Stats stats(HashMap<String, Stats> statsMap, String method) {
+        Stats stats = statsMap.get(method);
+        if (stats == null) {
+            stats = new Stats();
+            statsMap.put(method, stats);
+        }
+        return stats;
+    }
+
+    private static Map<String, Object> toMap(HashMap<String, Stats> statsMap) {
+        Map<String, Object> map = new HashMap<>();
+        for (Map.Entry<String, Stats> entry : statsMap.entrySet()) {
+            map.put(entry.getKey(), entry.getValue().toMap());
+        }
+        return map;
+    }
+
+    private static long encodedSize(String method, Object arguments) {
+        ByteBuffer buffer = StandardMethodCodec.INSTANCE.encodeMethodCall(new MethodCall(method, arguments));
+        return buffer == null ? 0 : buffer.limit();
+    }
+}
@@ -0,0 +1,437 @@
+package com.example.fluttermediaplugin;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ExoPlaybackException;
+import com.google.android.exoplayer2.ExoPlayerFactory;
+import com.google.android.exoplayer2.PlaybackParameters;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.SimpleExoPlayer;
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.audio.AudioAttributes;
+import com.google.android.exoplayer2.source.MediaSource;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.DefaultTrackSelector;
+import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Overlaps the end of a media with the start of the next one. A second player is prepared
+ * with the playing media shortly before its end and follows it muted. When the crossfade
+ * starts it takes over the tail while the main player moves on to the next media. The tail
+ * plays at full volume until the next media is ready, then the volumes of both are ramped
+ * within what is left of the tail. The main player stays the one the queue, notification and
+ * events belong to.
+ * <p>
+ * Every transition of the main player to the next media is reported with its timing: the
+ * gap is how long no media was audible, the overlap how long both played. With a crossfade
+ * of 0 transitions are gapless as far as ExoPlayer can make them and only measured.
+ * <p>
+ * The gap is measured when the player rebuffers into the next media. A gapless transition
+ * without rebuffering has no playback state change to time it by, its gap is reported as 0
+ * with gapMeasured false: the renderers play on, but an output gap is not ruled out.
+ * <p>
+ * Methods are called from the main thread.
+ */
+final class CrossfadeEngine implements Player.EventListener {
+    private static final String TAG = "CrossfadeEngine";
+    // how long before the crossfade the second player is prepared
+    private static final long ARM_LEAD_MS = 3000;
+    // offset between the two players at which the second one is synchronized again
+    private static final long MAX_DRIFT_MS = 100;
+    private static final int MAX_RESYNCS = 2;
+    private static final long TICK_INTERVAL_MS = 200;
+    private static final long FADE_TICK_INTERVAL_MS = 30;
+    // how long a gapless transition is watched for rebuffering
+    private static final long GAPLESS_SETTLE_MS = 1000;
+
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_ARMED = 1;
+    private static final int STATE_FADING = 2;
+
+    interface Callback {
+        int getCurrentIndex();
+
+        int getNextIndex();
+
+        /**
+         * @return a source of the current media on its own, null if there is none
+         */
+        @Nullable
+        MediaSource createCurrentMediaSource();
+
+        void skipToNext();
+
+        void onTransition(@NonNull Map<String, Object> transition);
+    }
+
+    private final Context context;
+    private final SimpleExoPlayer player;
+    private final Callback callback;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable tick = new Runnable() {
+        @Override
+        public void run() {
+            onTick();
+        }
+    };
+
+    @Nullable
+    private SimpleExoPlayer fadePlayer;
+    private long crossfadeMs = 0;
+    private int state = STATE_IDLE;
+    private boolean isTicking = false;
+    private boolean isHandingOff = false;
+
+    private int armedIndex = C.INDEX_UNSET;
+    private int resyncs = 0;
+    private long driftMs = 0;
+
+    private int playingIndex = C.INDEX_UNSET;
+    // the transition being measured, transitionStartMs is 0 if there is none. The outgoing
+    // media is audible until fadeEndMs, the next one from readyMs on.
+    private int fromIndex = C.INDEX_UNSET;
+    private int toIndex = C.INDEX_UNSET;
+    private long transitionStartMs = 0;
+    private long fadeEndMs = 0;
+    private long readyMs = 0;
+    // length of the volume ramp of a crossfade, it starts at readyMs
+    private long rampMs = 0;
+
+    CrossfadeEngine(@NonNull Context context, @NonNull SimpleExoPlayer player, @NonNull Callback callback) {
+        this.context = context;
+        this.player = player;
+        this.callback = callback;
+        player.addListener(this);
+    }
+
+    /**
+     * @param crossfadeMs overlap of consecutive media, 0 for gapless transitions
+     */
+    void setCrossfade(long crossfadeMs) {
+        cancel();
+        this.crossfadeMs = crossfadeMs;
+        if (crossfadeMs <= 0 && fadePlayer != null) {
+            fadePlayer.release();
+            fadePlayer = null;
+        }
+        updateTicking();
+    }
+
+    long getCrossfade() {
+        return crossfadeMs;
+    }
+
+    /**
+     * Stops a running crossfade, the main player continues at full volume.
+     */
+    void cancel() {
+        handler.removeCallbacks(tick);
+        isTicking = false;
+        if (state != STATE_IDLE && fadePlayer != null) {
+            fadePlayer.stop(true);
+        }
+        if (state == STATE_FADING) {
+            transitionStartMs = 0;
+        }
+        state = STATE_IDLE;
+        armedIndex = C.INDEX_UNSET;
+        player.setVolume(1f);
+        updateTicking();
+    }
+
+    void release() {
+        cancel();
+        handler.removeCallbacksAndMessages(null);
+        player.removeListener(this);
+        if (fadePlayer != null) {
+            fadePlayer.release();
+            fadePlayer = null;
+        }
+    }
+
+    private SimpleExoPlayer getFadePlayer() {
+        if (fadePlayer == null) {
+            fadePlayer = ExoPlayerFactory.newSimpleInstance(context, new DefaultTrackSelector());
+            AudioAttributes audioAttributes = new AudioAttributes.Builder()
+                    .setUsage(C.USAGE_MEDIA)
+                    .setContentType(C.CONTENT_TYPE_MUSIC)
+                    .build();
+            // the main player holds the audio focus
+            fadePlayer.setAudioAttributes(audioAttributes, false);
+        }
+        return fadePlayer;
+    }
+
+    private void updateTicking() {
+        boolean shouldTick = (crossfadeMs > 0 && player.getPlayWhenReady()
+                && player.getPlaybackState() == Player.STATE_READY) || state != STATE_IDLE;
+        if (shouldTick && !isTicking) {
+            isTicking = true;
+            handler.post(tick);
+        } else if (!shouldTick && isTicking) {
+            isTicking = false;
+            handler.removeCallbacks(tick);
+        }
+    }
+
+    private void onTick() {
+        if (!isTicking) {
+            return;
+        }
+
+        switch (state) {
+            case STATE_IDLE:
+                onIdleTick();
+                break;
+            case STATE_ARMED:
+                onArmedTick();
+                break;
+            case STATE_FADING:
+                onFadingTick();
+                break;
+        }
+
+        if (isTicking) {
+            handler.removeCallbacks(tick);
+            handler.postDelayed(tick, state == STATE_FADING ? FADE_TICK_INTERVAL_MS : TICK_INTERVAL_MS);
+        }
+    }
+
+    private long getRemainingMs() {
+        long duration = player.getDuration();
+        if (duration == C.TIME_UNSET) {
+            return C.TIME_UNSET;
+        }
+        return duration - player.getCurrentPosition();
+    }
+
+    private boolean canCrossfade() {
+        int nextIndex = callback.getNextIndex();
+        return crossfadeMs > 0 && player.getRepeatMode() != Player.REPEAT_MODE_ONE
+                && nextIndex != C.INDEX_UNSET && nextIndex != callback.getCurrentIndex();
+    }
+
+    private void onIdleTick() {
+        long remainingMs = getRemainingMs();
+        if (remainingMs == C.TIME_UNSET || remainingMs <= crossfadeMs
+                || remainingMs > crossfadeMs + ARM_LEAD_MS || !canCrossfade()) {
+            return;
+        }
+
+        MediaSource mediaSource = callback.createCurrentMediaSource();
+        if (mediaSource == null) {
+            return;
+        }
+
+        SimpleExoPlayer fadePlayer = getFadePlayer();
+        fadePlayer.setVolume(0f);
+        fadePlayer.prepare(mediaSource);
+        fadePlayer.seekTo(player.getCurrentPosition());
+        fadePlayer.setPlayWhenReady(true);
+        armedIndex = callback.getCurrentIndex();
+        resyncs = 0;
+        state = STATE_ARMED;
+    }
+
+    private void onArmedTick() {
+        SimpleExoPlayer fadePlayer = getFadePlayer();
+        boolean isFadePlayerReady = fadePlayer.getPlaybackState() == Player.STATE_READY;
+        driftMs = fadePlayer.getCurrentPosition() - player.getCurrentPosition();
+        if (isFadePlayerReady && Math.abs(driftMs) > MAX_DRIFT_MS && resyncs < MAX_RESYNCS) {
+            resyncs++;
+            fadePlayer.seekTo(player.getCurrentPosition());
+            return;
+        }
+
+        long remainingMs = getRemainingMs();
+        if (remainingMs == C.TIME_UNSET || remainingMs > crossfadeMs) {
+            return;
+        }
+        if (!isFadePlayerReady || !canCrossfade()) {
+            // the main player transitions by itself
+            Log.d(TAG, "Second player not ready, transition without crossfade");
+            cancel();
+            return;
+        }
+
+        startTransition(callback.getCurrentIndex(), callback.getNextIndex());
+        // the end of the tail until the next media is ready and the ramp is known
+        fadeEndMs = transitionStartMs + Math.max(0, remainingMs);
+        rampMs = Math.max(0, Math.min(crossfadeMs, remainingMs));
+
+        fadePlayer.setVolume(1f);
+        player.setVolume(0f);
+        isHandingOff = true;
+        callback.skipToNext();
+        isHandingOff = false;
+        playingIndex = callback.getCurrentIndex();
+        state = STATE_FADING;
+    }
+
+    private void onFadingTick() {
+        if (readyMs == 0) {
+            // the next media is buffering, a ramp now would fade into silence
+            return;
+        }
+
+        long now = SystemClock.elapsedRealtime();
+        float progress = fadeEndMs > readyMs
+                ? Math.min(1f, (float) (now - readyMs) / (fadeEndMs - readyMs)) : 1f;
+
+        // equal power ramp, the loudness stays the same while both play
+        player.setVolume((float) Math.sin(progress * Math.PI / 2));
+        getFadePlayer().setVolume((float) Math.cos(progress * Math.PI / 2));
+        if (progress < 1f) {
+            return;
+        }
+
+        getFadePlayer().stop(true);
+        player.setVolume(1f);
+        state = STATE_IDLE;
+        armedIndex = C.INDEX_UNSET;
+        if (transitionStartMs != 0 && readyMs != 0) {
+            reportTransition(true);
+        }
+        updateTicking();
+    }
+
+    private void startTransition(int fromIndex, int toIndex) {
+        this.fromIndex = fromIndex;
+        this.toIndex = toIndex;
+        transitionStartMs = SystemClock.elapsedRealtime();
+        fadeEndMs = transitionStartMs;
+        readyMs = 0;
+        handler.removeCallbacks(settleGaplessTransition);
+    }
+
+    private void reportTransition(boolean isGapMeasured) {
+        long overlapMs = Math.max(0, fadeEndMs - readyMs);
+        long gapMs = Math.max(0, readyMs - fadeEndMs);
+
+        Map<String, Object> transition = new HashMap<>();
+        transition.put("fromIndex", fromIndex);
+        transition.put("toIndex", toIndex);
+        transition.put("crossfadeMs", crossfadeMs);
+        transition.put("overlapMs", overlapMs);
+        transition.put("gapMs", gapMs);
+        transition.put("gapMeasured", isGapMeasured);
+        transition.put("driftMs", fadeEndMs > transitionStartMs ? driftMs : 0);
+        transitionStartMs = 0;
+        callback.onTransition(transition);
+    }
+
+    // a period transition without rebuffering doesn't change the playback state, so its gap
+    // is assumed to be 0 rather than measured
+    private final Runnable settleGaplessTransition = new Runnable() {
+        @Override
+        public void run() {
+            if (transitionStartMs != 0 && state == STATE_IDLE && readyMs == 0
+                    && player.getPlaybackState() == Player.STATE_READY) {
+                readyMs = transitionStartMs;
+                reportTransition(false);
+            }
+        }
+    };
+
+    @Override
+    public void onPositionDiscontinuity(int reason) {
+        if (isHandingOff) {
+            return;
+        }
+        if (state != STATE_IDLE) {
+            // a seek or skip of the user
+            cancel();
+        }
+        int currentIndex = callback.getCurrentIndex();
+        if (reason == Player.DISCONTINUITY_REASON_PERIOD_TRANSITION && currentIndex != playingIndex) {
+            startTransition(playingIndex, currentIndex);
+            driftMs = 0;
+            handler.postDelayed(settleGaplessTransition, GAPLESS_SETTLE_MS);
+        } else {
+            transitionStartMs = 0;
+        }
+        playingIndex = currentIndex;
+    }
+
+    @Override
+    public void onPlayerStateChanged(boolean playWhenReady, int playbackState) {
+        if (!playWhenReady || playbackState == Player.STATE_IDLE || playbackState == Player.STATE_ENDED) {
+            if (state != STATE_IDLE) {
+                cancel();
+            }
+            transitionStartMs = 0;
+        }
+
+        checkNextMediaReady();
+        playingIndex = callback.getCurrentIndex();
+        updateTicking();
+    }
+
+    private void checkNextMediaReady() {
+        if (transitionStartMs == 0 || readyMs != 0 || player.getPlaybackState() != Player.STATE_READY
+                || callback.getCurrentIndex() != toIndex) {
+            return;
+        }
+
+        readyMs = SystemClock.elapsedRealtime();
+        if (state == STATE_FADING) {
+            // the ramp runs from now on and ends with the tail at the latest. A tail which
+            // ended before is a gap.
+            fadeEndMs = Math.min(readyMs + rampMs, fadeEndMs);
+        } else if (state == STATE_IDLE) {
+            reportTransition(true);
+        }
+    }
+
+    @Override
+    public void onTimelineChanged(Timeline timeline, @Nullable Object manifest, int reason) {
+        playingIndex = callback.getCurrentIndex();
+        if (state == STATE_ARMED && playingIndex != armedIndex) {
+            cancel();
+        }
+    }
+
+    @Override
+    public void onTracksChanged(TrackGroupArray trackGroups, TrackSelectionArray trackSelections) {
+    }
+
+    @Override
+    public void onLoadingChanged(boolean isLoading) {
+    }
+
+    @Override
+    public void onRepeatModeChanged(int repeatMode) {
+    }
+
+    @Override
+    public void onShuffleModeEnabledChanged(boolean shuffleModeEnabled) {
+    }
+
+    @Override
+    public void onPlayerError(ExoPlaybackException error) {
+        if (state != STATE_IDLE) {
+            cancel();
+        }
+    }
+
+    @Override
+    public void onPlaybackParametersChanged(PlaybackParameters playbackParameters) {
+    }
+
+    @Override
+    public void onSeekProcessed() {
+        // the skip of a crossfade doesn't change the playback state if the next media is buffered
+        checkNextMediaReady();
+    }
+}
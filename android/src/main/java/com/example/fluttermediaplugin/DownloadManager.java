@@ -3,6 +3,8 @@ package com.example.fluttermediaplugin;
 import android.content.Context;
 import android.net.Uri;
 
+import androidx.annotation.NonNull;
+
 import com.example.fluttermediaplugin.Media.Media;
 import com.example.fluttermediaplugin.Media.Song;
 import com.example.fluttermediaplugin.Media.Video;
@@ -39,8 +41,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
-import io.flutter.plugin.common.MethodChannel;
-
 import static com.example.fluttermediaplugin.FlutterMediaPlugin.DOWNLOAD_METHOD_TYPE;
 import static com.example.fluttermediaplugin.Utility.Constants.DOWNLOAD_ACTION_FILE;
 import static com.example.fluttermediaplugin.Utility.Constants.DOWNLOAD_CONTENT_DIRECTORY;
@@ -108,12 +108,12 @@ final class DownloadManager {
     private com.google.android.exoplayer2.offline.DownloadManager exoPlayerDownloadManager;
     private final HashMap<String, Download> downloads;
     private final DownloadManagerListener downloadManagerListener;
-    private MethodChannel channel;
+    private OutboundEventBus eventBus;
     private Context context;
 
-    DownloadManager(Context context, final MethodChannel channel) {
+    DownloadManager(Context context, @NonNull OutboundEventBus eventBus) {
         this.context = context;
-        this.channel = channel;
+        this.eventBus = eventBus;
         downloads = new HashMap<>();
         exoPlayerDownloadManager = getExoPlayerDownloadManager(context);
 
@@ -190,10 +190,6 @@ final class DownloadManager {
         DownloadService.sendRemoveDownload(context, MediaDownloadService.class, id, true);
     }
 
-    void setChannel(final MethodChannel channel) {
-        this.channel = channel;
-    }
-
     com.google.android.exoplayer2.offline.DownloadManager getExoPlayerDownloadManager(Context context) {
         if (exoPlayerDownloadManager == null) {
             DefaultDownloadIndex downloadIndex = new DefaultDownloadIndex(DownloadManager.getDatabaseProvider(context));
@@ -211,16 +207,19 @@ final class DownloadManager {
         return exoPlayerDownloadManager;
     }
 
+    static String downloadId(Media media) throws JSONException {
+        JSONObject json = new JSONObject(media.toMap());
+        if (media instanceof Song) {
+            json.put(MEDIA_TYPE, SONG_MEDIA_TAG);
+        } else if (media instanceof Video) {
+            json.put(MEDIA_TYPE, VIDEO_MEDIA_TAG);
+        }
+        return json.toString();
+    }
+
     void startDownload(Media media) {
         try {
-            JSONObject json = new JSONObject(media.toMap());
-            if (media instanceof Song) {
-                json.put(MEDIA_TYPE, SONG_MEDIA_TAG);
-            } else if (media instanceof Video) {
-                json.put(MEDIA_TYPE, VIDEO_MEDIA_TAG);
-            }
-
-            String id = json.toString();
+            String id = downloadId(media);
             startDownload(id, Uri.parse(media.getUrl()));
 //            Log.d(TAG, "Start download" + id);
         } catch (JSONException e) {
@@ -230,14 +229,7 @@ final class DownloadManager {
 
     void removeDownload(Media media) {
         try {
-            JSONObject json = new JSONObject(media.toMap());
-            if (media instanceof Song) {
-                json.put(MEDIA_TYPE, SONG_MEDIA_TAG);
-            } else if (media instanceof Video) {
-                json.put(MEDIA_TYPE, VIDEO_MEDIA_TAG);
-            }
-
-            String id = json.toString();
+            String id = downloadId(media);
             Log.d(TAG, "remove media : " + id);
             removeDownload(id);
         } catch (JSONException e) {
@@ -247,16 +239,7 @@ final class DownloadManager {
 
     boolean isDownloaded(Media media) {
         try {
-            JSONObject json = new JSONObject(media.toMap());
-            if (media instanceof Song) {
-                json.put(MEDIA_TYPE, SONG_MEDIA_TAG);
-            } else if (media instanceof Video) {
-                json.put(MEDIA_TYPE, VIDEO_MEDIA_TAG);
-            }
-            String id = json.toString();
-            Download download = downloads.get(id);
-
-            return download != null && download.state != Download.STATE_FAILED;
+            return isDownloaded(downloadId(media));
         } catch (JSONException e) {
             Log.d(TAG, "can't parse media to map object. " + e.getMessage());
         }
@@ -264,6 +247,11 @@ final class DownloadManager {
         return false;
     }
 
+    boolean isDownloaded(String id) {
+        Download download = downloads.get(id);
+        return download != null && download.state != Download.STATE_FAILED;
+    }
+
     void updateDownloads(List<Download> downloads) {
         for (Download download: downloads) {
             downloadManagerListener.onDownloadChangedOrAdded(download);
@@ -272,32 +260,43 @@ final class DownloadManager {
 
     private class DownloadManagerListener {
         void onInitialized() {
-            ArrayList<Map<String, Object>> args = new ArrayList<>();
-
-            for (Map.Entry<String, Download> download : downloads.entrySet()) {
-                try {
-                    Map<String, Object> songMap = new HashMap<>();
-
-                    JSONObject jsonObject = new JSONObject(download.getKey());
-
-                    Iterator<String> keys = jsonObject.keys();
-                    while (keys.hasNext()) {
-                        String key = keys.next();
-                        String value = (String) jsonObject.get(key);
-                        songMap.put(key, value);
+            // the download ids are parsed on a worker, the downloads map is only read here
+            final ArrayList<Download> snapshot = new ArrayList<>(downloads.values());
+            WorkerExecutor.execute(new WorkerExecutor.Job<ArrayList<Map<String, Object>>>() {
+                @Override
+                ArrayList<Map<String, Object>> doInBackground() {
+                    ArrayList<Map<String, Object>> args = new ArrayList<>(snapshot.size());
+
+                    for (Download download : snapshot) {
+                        try {
+                            Map<String, Object> songMap = new HashMap<>();
+
+                            JSONObject jsonObject = new JSONObject(download.request.id);
+
+                            Iterator<String> keys = jsonObject.keys();
+                            while (keys.hasNext()) {
+                                String key = keys.next();
+                                String value = (String) jsonObject.get(key);
+                                songMap.put(key, value);
+                            }
+
+                            songMap.put("state", download.state);
+                            songMap.put("percent", download.getPercentDownloaded());
+                            songMap.put("bytesDownloaded", download.getBytesDownloaded());
+
+                            args.add(songMap);
+                        } catch (JSONException throwable) {
+                            Log.e(TAG, "Could not parse malformed JSON: \"" + throwable.getMessage() + "\"");
+                        }
                     }
-
-                    songMap.put("state", download.getValue().state);
-                    songMap.put("percent", download.getValue().getPercentDownloaded());
-                    songMap.put("bytesDownloaded", download.getValue().getBytesDownloaded());
-
-                    args.add(songMap);
-                } catch (JSONException throwable) {
-                    Log.e(TAG, "Could not parse malformed JSON: \"" + throwable.getMessage() + "\"");
+                    return args;
                 }
-            }
 
-            channel.invokeMethod(DOWNLOAD_METHOD_TYPE + "/onInitialized", args);
+                @Override
+                void onResult(ArrayList<Map<String, Object>> args) {
+                    eventBus.send(DOWNLOAD_METHOD_TYPE + "/onInitialized", args);
+                }
+            });
         }
 
         void onDownloadChangedOrAdded(Download download) {
@@ -319,7 +318,9 @@ final class DownloadManager {
                 args.put("percent", download.getPercentDownloaded());
                 args.put("bytesDownloaded", download.getBytesDownloaded());
 
-                channel.invokeMethod(DOWNLOAD_METHOD_TYPE + "/onDownloadChangedOrAdded", args);
+                // progress of a download is latest wins, the final state replaces older progress
+                String method = DOWNLOAD_METHOD_TYPE + "/onDownloadChangedOrAdded";
+                eventBus.send(method, args, method + download.request.id);
             } catch (JSONException e) {
                 Log.e(TAG, "Could not parse malformed JSON: \"" + e.getMessage() + "\"");
             }
@@ -339,7 +340,7 @@ final class DownloadManager {
                     songMap.put(key, value);
                 }
 
-                channel.invokeMethod(DOWNLOAD_METHOD_TYPE + "/onDownloadRemoved", songMap);
+                eventBus.send(DOWNLOAD_METHOD_TYPE + "/onDownloadRemoved", songMap);
             } catch (JSONException e) {
                 Log.e(TAG, "Could not parse malformed JSON: \"" + e.getMessage() + "\"");
             }
@@ -1,6 +1,7 @@
 package com.example.fluttermediaplugin;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import android.net.Uri;
 import android.util.Log;
@@ -8,17 +9,20 @@ import android.util.Log;
 import com.example.fluttermediaplugin.Media.Media;
 import com.example.fluttermediaplugin.Media.Song;
 import com.example.fluttermediaplugin.Media.Video;
+import com.example.fluttermediaplugin.MethodDispatcher.MethodHandler;
 import com.google.android.exoplayer2.Player;
 import com.nostra13.universalimageloader.core.ImageLoader;
 import com.nostra13.universalimageloader.core.ImageLoaderConfiguration;
 
 import org.json.JSONException;
-import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+import io.flutter.plugin.common.EventChannel;
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
@@ -34,11 +38,13 @@ import static com.example.fluttermediaplugin.Utility.MediaIds.VIDEO_MEDIA_TAG;
  */
 public class FlutterMediaPlugin implements MethodCallHandler {
     private static final String TAG = "FlutterMediaPlugin";
-    private static Pattern METHOD_NAME_MATCH = Pattern.compile("([^/]+)/([^/]+)");
+    private static final String AUDIO_POSITION_CHANNEL = "flutter_media_plugin/audio_position";
 
     static String VIDEO_METHOD_TYPE = "VIDEO_TYPE";
     static String AUDIO_METHOD_TYPE = "AUDIO_TYPE";
     static String DOWNLOAD_METHOD_TYPE = "DOWNLOAD_TYPE";
+    static String METRICS_METHOD_TYPE = "METRICS_TYPE";
+    static String EVENT_METHOD_TYPE = "EVENT_TYPE";
 
     private static FlutterMediaPlugin instance;
 
@@ -48,6 +54,13 @@ public class FlutterMediaPlugin implements MethodCallHandler {
     private DownloadManager downloadManager;
 
     private MethodChannel channel;
+    private OutboundEventBus eventBus;
+    // the latest setPlaylist request, playlists parsed for an older one are dropped because
+    // parsing runs on several workers and can finish out of order
+    private int playlistRequest = 0;
+    private final PositionAnchorStream audioPositionAnchorStream = new PositionAnchorStream();
+    private final MethodDispatcher methodDispatcher = new MethodDispatcher();
+    private final ChannelMetrics channelMetrics = new ChannelMetrics();
 
     static FlutterMediaPlugin getInstance() {
         if (instance == null) {
@@ -74,17 +87,21 @@ public class FlutterMediaPlugin implements MethodCallHandler {
 
         channel.setMethodCallHandler(this);
         this.channel = channel;
+        eventBus = new OutboundEventBus(channel, channelMetrics);
+        new EventChannel(registrar.messenger(), AUDIO_POSITION_CHANNEL).setStreamHandler(audioPositionAnchorStream);
+
+        registerMethods();
     }
 
     private void initializeAudioPlayer() {
         ImageLoaderConfiguration config = new ImageLoaderConfiguration.Builder(registrar.context()).build();
         ImageLoader.getInstance().init(config);
 
-        audioPlayer = new AudioPlayer(registrar.activeContext(), channel);
+        audioPlayer = new AudioPlayer(registrar.activeContext(), eventBus, audioPositionAnchorStream);
     }
 
     private void initializeVideoPlayer() {
-        videoPlayer = new VideoPlayer(registrar.activeContext(), registrar.textures(), channel);
+        videoPlayer = new VideoPlayer(registrar.activeContext(), registrar.textures(), eventBus);
     }
 
     /**
@@ -98,167 +115,231 @@ public class FlutterMediaPlugin implements MethodCallHandler {
             MethodChannel channel = new MethodChannel(_registrar.messenger(), "flutter_media_plugin");
             channel.setMethodCallHandler(instance);
             instance.channel = channel;
-
-            if (instance.audioPlayer != null) {
-                instance.audioPlayer.setChannel(channel);
-            }
-
-            if (instance.videoPlayer != null) {
-                instance.videoPlayer.setChannel(channel);
-            }
+            instance.eventBus.setChannel(channel);
+            new EventChannel(_registrar.messenger(), AUDIO_POSITION_CHANNEL).setStreamHandler(instance.audioPositionAnchorStream);
         }
 
-        if (instance.downloadManager != null) {
-            instance.downloadManager.setChannel(instance.channel);
-        } else {
-            instance.downloadManager = new DownloadManager(instance.getRegistrar().activeContext(), instance.channel);
+        if (instance.downloadManager == null) {
+            instance.downloadManager = new DownloadManager(instance.getRegistrar().activeContext(), instance.eventBus);
         }
     }
 
     @Override
     public void onMethodCall(MethodCall call, @NonNull Result result) {
-        MethodTypeCall methodTypeCall = parseMethodName(call.method);
-//        Log.d(TAG, methodTypeCall.toString());
-        if (methodTypeCall.methodType != null) {
-            if (methodTypeCall.methodType.equals(AUDIO_METHOD_TYPE)) {
-                if (methodTypeCall.method.equals("initialize")) {
-                    if (audioPlayer == null) {
-                        initializeAudioPlayer();
-                    } else {
-                        Log.d(TAG, "Already audioPlayer is initialized");
-                        audioPlayer.initialize();
-                    }
+        if (channelMetrics.isEnabled()) {
+            result = channelMetrics.track(call, result);
+        }
 
-                    result.success(null);
-                    return;
-                }
+        if (!methodDispatcher.dispatch(call, result)) {
+            Log.e(TAG, "Method is not called appropriately: " + call.method);
+            result.notImplemented();
+        }
+    }
+
+    Map<String, Long> getMethodInvocationCounts() {
+        return methodDispatcher.getInvocationCounts();
+    }
+
+    private void registerMethods() {
+        registerAudioMethods();
+        registerVideoMethods();
+        registerDownloadMethods();
+
+        methodDispatcher.register(METRICS_METHOD_TYPE, "invocationCounts", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+                result.success(methodDispatcher.getInvocationCounts());
+            }
+        });
+        methodDispatcher.register(METRICS_METHOD_TYPE, "eventCounters", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+                result.success(eventBus.getCounters());
+            }
+        });
+        methodDispatcher.register(METRICS_METHOD_TYPE, "setEnabled", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+                //noinspection ConstantConditions
+                boolean enabled = call.argument("enabled");
+                channelMetrics.setEnabled(enabled);
+                result.success(null);
+            }
+        });
+        methodDispatcher.register(METRICS_METHOD_TYPE, "snapshot", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+                result.success(channelMetrics.snapshot());
+            }
+        });
+        methodDispatcher.register(METRICS_METHOD_TYPE, "reset", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+                channelMetrics.reset();
+                methodDispatcher.resetInvocationCounts();
+                result.success(null);
+            }
+        });
+    }
 
+    private void registerAudioMethod(@NonNull String method, @NonNull final MethodHandler handler) {
+        methodDispatcher.register(AUDIO_METHOD_TYPE, method, new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
                 if (audioPlayer == null) {
                     Log.d(TAG, "AudioPlayer is null");
                     result.success(null);
                     return;
                 }
+                handler.onMethodCall(call, result);
+            }
+        });
+    }
 
-                audioMethodCall(methodTypeCall.method, call, result);
-            } else if (methodTypeCall.methodType.equals(VIDEO_METHOD_TYPE)) {
-                if (methodTypeCall.method.equals("initialize")) {
-                    if (videoPlayer == null) {
-                        initializeVideoPlayer();
-                    } else {
-                        Log.d(TAG, "Already videoPlayer is initialized");
-                        videoPlayer.initialize();
-                    }
-                    result.success(null);
-                    return;
-                }
-
+    private void registerVideoMethod(@NonNull String method, @NonNull final MethodHandler handler) {
+        methodDispatcher.register(VIDEO_METHOD_TYPE, method, new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
                 if (videoPlayer == null) {
                     Log.d(TAG, "VideoPlayer is null");
                     result.success(null);
                     return;
                 }
+                handler.onMethodCall(call, result);
+            }
+        });
+    }
 
-                videoMethodCall(methodTypeCall.method, call, result);
-            } else if (methodTypeCall.methodType.equals(DOWNLOAD_METHOD_TYPE)) {
-                if (methodTypeCall.method.equals("initialize")) {
-                    if (downloadManager == null) {
-                        downloadManager = new DownloadManager(getRegistrar().activeContext(), instance.channel);
-                    } else {
-                        Log.d(TAG, "Already download manager is initialized");
-                        downloadManager.initialize();
-                    }
-                    result.success(null);
-                    return;
-                }
-
+    private void registerDownloadMethod(@NonNull String method, @NonNull final MethodHandler handler) {
+        methodDispatcher.register(DOWNLOAD_METHOD_TYPE, method, new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
                 if (downloadManager == null) {
                     Log.d(TAG, "download manager is not initialized");
                     result.success(null);
                     return;
                 }
-
-                downloadMethodCall(methodTypeCall.method, call, result);
+                handler.onMethodCall(call, result);
             }
-        } else {
-            Log.e(TAG, "Method is not called appropriately");
-        }
+        });
     }
 
-    private void audioMethodCall(String method, MethodCall call, Result result) {
-        switch (method) {
-            case "play":
-//                Log.d(TAG, "play");
+    private void registerAudioMethods() {
+        methodDispatcher.register(AUDIO_METHOD_TYPE, "initialize", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+                if (audioPlayer == null) {
+                    initializeAudioPlayer();
+                } else {
+                    Log.d(TAG, "Already audioPlayer is initialized");
+                }
+                Number revision = call.argument("revision");
+                Boolean isPlaylistPaged = call.argument("paged");
+                audioPlayer.initialize(revision == null ? -1 : revision.longValue(), isPlaylistPaged != null && isPlaylistPaged);
+
+                result.success(null);
+            }
+        });
+        registerAudioMethod("play", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
                 audioPlayer.play();
                 if (videoPlayer != null) {
                     videoPlayer.pause();
                 }
                 result.success(null);
-                break;
-            case "pause":
-//                Log.d(TAG, "pause");
+            }
+        });
+        registerAudioMethod("pause", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
                 audioPlayer.pause();
                 result.success(null);
-                break;
-            case "seekTo":
+            }
+        });
+        registerAudioMethod("seekTo", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
                 //noinspection ConstantConditions
                 int position = call.argument("position");
                 audioPlayer.seekTo(position);
                 result.success(null);
-                break;
-            case "skipToNext":
+            }
+        });
+        registerAudioMethod("skipToNext", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
                 audioPlayer.skipToNext();
                 result.success(null);
-                break;
-            case "skipToPrevious":
+            }
+        });
+        registerAudioMethod("skipToPrevious", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
                 audioPlayer.skipToPrevious();
                 result.success(null);
-                break;
-            case "skipToIndex": {
+            }
+        });
+        registerAudioMethod("skipToIndex", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
                 //noinspection ConstantConditions
                 int index = call.argument("index");
                 audioPlayer.skipToIndex(index);
                 result.success(null);
-                break;
             }
-            case "setRepeatMode": {
+        });
+        registerAudioMethod("setRepeatMode", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
                 //noinspection ConstantConditions
                 int repeatMode = call.argument("repeatMode");
-                if(repeatMode == Player.REPEAT_MODE_OFF || repeatMode == Player.REPEAT_MODE_ONE || repeatMode == Player.REPEAT_MODE_ALL) {
+                if (repeatMode == Player.REPEAT_MODE_OFF || repeatMode == Player.REPEAT_MODE_ONE || repeatMode == Player.REPEAT_MODE_ALL) {
                     audioPlayer.setRepeatMode(repeatMode);
                     result.success(null);
-                }
-                else {
+                } else {
                     result.error("Set Repeat", "Repeat value is " + repeatMode, null);
                 }
-                break;
             }
-            case "setShuffleModeEnabled": {
+        });
+        registerAudioMethod("setShuffleModeEnabled", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
                 //noinspection ConstantConditions
                 boolean shuffleModeEnabled = call.argument("shuffleModeEnabled");
                 audioPlayer.setShuffleModeEnabled(shuffleModeEnabled);
                 result.success(null);
-                break;
             }
-            case "stop":
+        });
+        registerAudioMethod("stop", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
                 audioPlayer.stop();
                 result.success(null);
-                break;
-            case "release":
+            }
+        });
+        registerAudioMethod("release", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
                 audioPlayer.release();
                 result.success(null);
-                break;
-            case "playNext": {
+            }
+        });
+        registerAudioMethod("playNext", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
                 Map<String, String> stringMap = call.arguments();
                 Song song = Song.fromMap(stringMap);
-                if(song != null) {
+                if (song != null) {
                     result.success(audioPlayer.playNext(song));
-                }
-                else {
+                } else {
                     result.error("Song key", "Song key is not found", "Song key is not found");
                 }
-                break;
             }
-            case "addSongAtIndex": {
+        });
+        registerAudioMethod("addSongAtIndex", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
                 //noinspection ConstantConditions
                 int index = call.argument("index");
                 //noinspection ConstantConditions
@@ -266,50 +347,382 @@ public class FlutterMediaPlugin implements MethodCallHandler {
 
                 Map<String, String> stringMap = call.arguments();
                 Song song = Song.fromMap(stringMap);
-                if(song != null) {
+                if (song != null) {
                     boolean isAdded = audioPlayer.addSongAtIndex(index, song, shouldPlay == 1);
                     result.success(isAdded);
-                }else {
+                } else {
                     result.error("Song key", "Song key is not found", "Song key is not found");
                 }
-                break;
             }
-            case "removeSongFromIndex": {
+        });
+        registerAudioMethod("removeSongFromIndex", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
                 Map<String, String> stringMap = call.arguments();
                 Song song = Song.fromMap(stringMap);
 
-                if(song != null) {
+                if (song != null) {
                     //noinspection ConstantConditions
                     int index = call.argument("index");
                     boolean isRemoved = audioPlayer.removeSongFromIndex(song, index);
                     result.success(isRemoved);
+                } else {
+                    result.error("Song key", "Song key is not found", "Song key is not found");
+                }
+            }
+        });
+        registerAudioMethod("addSongsAtIndex", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+                Integer index = call.argument("index");
+                List<Map<String, String>> songMaps = call.argument("songs");
+                if (index == null || songMaps == null) {
+                    result.error("Add songs", "Index or songs are null", null);
+                    return;
+                }
+
+                ArrayList<Song> songs = new ArrayList<>(songMaps.size());
+                for (int i = 0; i < songMaps.size(); i++) {
+                    Song song = Song.fromMap(songMaps.get(i));
+                    if (song == null) {
+                        result.error("Song key", "Song " + i + " is malformed", null);
+                        return;
+                    }
+                    songs.add(song);
+                }
+
+                Integer shouldPlay = call.argument("shouldPlay");
+                boolean isAdded = audioPlayer.addSongsAtIndex(index, songs, shouldPlay != null && shouldPlay == 1);
+                result.success(isAdded);
+            }
+        });
+        registerAudioMethod("removeRange", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+                Integer from = call.argument("from");
+                Integer to = call.argument("to");
+                if (from == null || to == null) {
+                    result.error("Remove range", "Range is null", null);
+                    return;
+                }
+
+                result.success(audioPlayer.removeRange(from, to));
+            }
+        });
+        registerAudioMethod("moveRange", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+                Integer from = call.argument("from");
+                Integer to = call.argument("to");
+                Integer newIndex = call.argument("newIndex");
+                if (from == null || to == null || newIndex == null) {
+                    result.error("Move range", "Range or new index is null", null);
+                    return;
+                }
+
+                result.success(audioPlayer.moveRange(from, to, newIndex));
+            }
+        });
+        registerAudioMethod("indexOfKey", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+                String key = call.argument("key");
+                if (key == null) {
+                    result.error("Song key", "Song key is not found", "Song key is not found");
+                    return;
+                }
+
+                result.success(audioPlayer.indexOfKey(key));
+            }
+        });
+        registerAudioMethod("containsKey", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+                String key = call.argument("key");
+                if (key == null) {
+                    result.error("Song key", "Song key is not found", "Song key is not found");
+                    return;
+                }
+
+                result.success(audioPlayer.containsKey(key));
+            }
+        });
+        registerAudioMethod("searchQueue", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+                String query = call.argument("query");
+                Integer limit = call.argument("limit");
+                if (query == null || limit == null || limit < 0) {
+                    result.error("Search Queue", "Invalid query: " + query + ", limit: " + limit, null);
+                    return;
                 }
-                else {
+                result.success(audioPlayer.searchQueue(query, limit));
+            }
+        });
+        registerAudioMethod("removeByKey", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+                String key = call.argument("key");
+                if (key == null) {
                     result.error("Song key", "Song key is not found", "Song key is not found");
+                    return;
                 }
-                break;
+
+                result.success(audioPlayer.removeByKey(key));
             }
-            case "setPlaylist": {
-                String playlistStr = call.argument("playlist");
+        });
+        registerAudioMethod("setMediaSourceSettings", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+                Map<String, Object> settingsMap = call.arguments();
+                MediaSourceSettings settings = settingsMap != null ? MediaSourceSettings.fromMap(settingsMap) : null;
+                if (settings == null) {
+                    result.error("Media source settings", "Settings are malformed", null);
+                    return;
+                }
 
-                try {
-                    JSONObject playlistJsonObject = new JSONObject(playlistStr);
-                    audioPlayer.setPlaylist(playlistJsonObject, result);
-                } catch (JSONException e) {
-                    e.printStackTrace();
-                    result.error("Set Playlist", e.getMessage(), null);
+                audioPlayer.setMediaSourceSettings(settings);
+                result.success(null);
+            }
+        });
+        registerAudioMethod("setBufferProfile", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+                BufferProfile bufferProfile = bufferProfileOf(call);
+                if (bufferProfile == null) {
+                    result.error("Buffer profile", "Profile is malformed", null);
+                    return;
                 }
-                break;
+
+                audioPlayer.setBufferProfile(bufferProfile);
+                result.success(null);
             }
-            default:
-                result.notImplemented();
-                break;
-        }
+        });
+        registerAudioMethod("setPlaylistBinary", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull final Result result) {
+                final byte[] playlistBytes = call.argument("playlist");
+                if (playlistBytes == null) {
+                    result.error("Set Playlist", "Playlist is null", null);
+                    return;
+                }
+
+                final int request = ++playlistRequest;
+                WorkerExecutor.execute(new WorkerExecutor.Job<PlaylistCodec.DecodedPlaylist>() {
+                    @Override
+                    PlaylistCodec.DecodedPlaylist doInBackground() {
+                        return PlaylistCodec.decode(playlistBytes);
+                    }
+
+                    @Override
+                    void onResult(PlaylistCodec.DecodedPlaylist decodedPlaylist) {
+                        if (decodedPlaylist == null) {
+                            result.error("Set Playlist", "Playlist bytes are malformed", null);
+                            return;
+                        }
+                        if (request != playlistRequest) {
+                            result.error("Set Playlist", "A newer playlist was set", null);
+                            return;
+                        }
+                        audioPlayer.setPlaylist(decodedPlaylist.playlistName, decodedPlaylist.songs, result);
+                    }
+
+                    @Override
+                    void onError(@NonNull Exception e) {
+                        super.onError(e);
+                        result.error("Set Playlist", e.getMessage(), null);
+                    }
+                });
+            }
+        });
+        registerAudioMethod("setPrefetchLimits", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+                Integer itemCount = call.argument("itemCount");
+                Number bytesPerItem = call.argument("bytesPerItem");
+                Number budgetBytes = call.argument("budgetBytes");
+                if (itemCount == null || bytesPerItem == null || budgetBytes == null
+                        || itemCount < 0 || bytesPerItem.longValue() <= 0 || budgetBytes.longValue() < 0) {
+                    result.error("Prefetch Limits", "Invalid limits: " + itemCount + ", " + bytesPerItem + ", " + budgetBytes, null);
+                    return;
+                }
+                audioPlayer.setPrefetchLimits(itemCount, bytesPerItem.longValue(), budgetBytes.longValue());
+                result.success(null);
+            }
+        });
+        registerAudioMethod("getSkipLatencies", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+                Boolean reset = call.argument("reset");
+                result.success(audioPlayer.getSkipLatencies(reset != null && reset));
+            }
+        });
+        registerAudioMethod("setCrossfade", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+                Number crossfadeMs = call.argument("crossfadeMs");
+                if (crossfadeMs == null || crossfadeMs.longValue() < 0) {
+                    result.error("Crossfade", "Invalid crossfade: " + crossfadeMs, null);
+                    return;
+                }
+                audioPlayer.setCrossfade(crossfadeMs.longValue());
+                result.success(null);
+            }
+        });
+        registerAudioMethod("setShuffleSeed", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+                Number seed = call.argument("seed");
+                if (seed == null) {
+                    result.error("Shuffle Seed", "Seed is null", null);
+                    return;
+                }
+                result.success(audioPlayer.setShuffleSeed(seed.longValue()));
+            }
+        });
+        registerAudioMethod("getShuffleOrder", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+                result.success(audioPlayer.getShuffleOrder());
+            }
+        });
+        registerAudioMethod("switchPlaylist", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+                String playlistName = call.argument("playlistName");
+                if (playlistName == null) {
+                    result.error("Switch Playlist", "Playlist name is null", null);
+                    return;
+                }
+                if (!audioPlayer.switchPlaylist(playlistName, result)) {
+                    result.success(false);
+                }
+            }
+        });
+        registerAudioMethod("setResidentSongBudget", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+                Integer budget = call.argument("budget");
+                if (budget == null || budget < 0) {
+                    result.error("Resident Song Budget", "Invalid budget: " + budget, null);
+                    return;
+                }
+                audioPlayer.setResidentSongBudget(budget);
+                result.success(null);
+            }
+        });
+        registerAudioMethod("syncPlaylist", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+                Number revision = call.argument("revision");
+                result.success(audioPlayer.syncPlaylist(revision == null ? -1 : revision.longValue()));
+            }
+        });
+        registerAudioMethod("getPlaylistPage", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+                Integer offset = call.argument("offset");
+                Integer limit = call.argument("limit");
+                Map<String, Object> page = offset != null && limit != null ? audioPlayer.getPlaylistPage(offset, limit) : null;
+                if (page == null) {
+                    result.error("Playlist page", "Invalid page offset: " + offset + ", limit: " + limit, null);
+                    return;
+                }
+                result.success(page);
+            }
+        });
+        registerAudioMethod("setPlaylistWindow", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+                Integer offset = call.argument("offset");
+                Integer limit = call.argument("limit");
+                if (offset == null || limit == null || !audioPlayer.setPlaylistWindow(offset, limit)) {
+                    result.error("Playlist window", "Invalid window offset: " + offset + ", limit: " + limit, null);
+                    return;
+                }
+                result.success(null);
+            }
+        });
+        registerAudioMethod("batch", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+                List<Map<String, Object>> commandMaps = call.argument("commands");
+                if (commandMaps == null) {
+                    result.error("Batch", "Commands are null", "Commands should not be null");
+                    return;
+                }
+
+                ArrayList<PlaylistCommand> commands = new ArrayList<>(commandMaps.size());
+                for (int i = 0; i < commandMaps.size(); i++) {
+                    PlaylistCommand command = PlaylistCommand.fromMap(commandMaps.get(i));
+                    if (command == null) {
+                        result.error("Batch", "Command " + i + " is malformed", null);
+                        return;
+                    }
+                    commands.add(command);
+                }
+
+                ArrayList<Object> results = audioPlayer.applyBatch(commands);
+                if (results != null) {
+                    result.success(results);
+                } else {
+                    result.error("Batch", "Batch is rejected, no command is applied", null);
+                }
+            }
+        });
+        registerAudioMethod("setPlaylist", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull final Result result) {
+                final String playlistStr = call.argument("playlist");
+
+                final int request = ++playlistRequest;
+                WorkerExecutor.execute(new WorkerExecutor.Job<PlaylistCodec.DecodedPlaylist>() {
+                    @Override
+                    PlaylistCodec.DecodedPlaylist doInBackground() throws IOException {
+                        return Playlist.playlistFromJson(new StringReader(playlistStr));
+                    }
+
+                    @Override
+                    void onResult(PlaylistCodec.DecodedPlaylist decodedPlaylist) {
+                        if (request != playlistRequest) {
+                            result.error("Set Playlist", "A newer playlist was set", null);
+                            return;
+                        }
+                        audioPlayer.setPlaylist(decodedPlaylist.playlistName, decodedPlaylist.songs, result);
+                    }
+
+                    @Override
+                    void onError(@NonNull Exception e) {
+                        e.printStackTrace();
+                        result.error("Set Playlist", e.getMessage(), null);
+                    }
+                });
+            }
+        });
+    }
+
+    @Nullable
+    private static BufferProfile bufferProfileOf(@NonNull MethodCall call) {
+        Map<String, Object> profileMap = call.arguments();
+        return profileMap != null ? BufferProfile.fromMap(profileMap) : null;
     }
 
-    private void videoMethodCall(String method, MethodCall call, Result result) {
-        switch (method) {
-            case "addAndPlay": {
+    private void registerVideoMethods() {
+        methodDispatcher.register(VIDEO_METHOD_TYPE, "initialize", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+                if (videoPlayer == null) {
+                    initializeVideoPlayer();
+                } else {
+                    Log.d(TAG, "Already videoPlayer is initialized");
+                    videoPlayer.initialize();
+                }
+                result.success(null);
+            }
+        });
+        registerVideoMethod("addAndPlay", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
                 String url = call.argument("url");
                 String asset = call.argument("asset");
                 if (url == null && asset != null) {
@@ -320,128 +733,140 @@ public class FlutterMediaPlugin implements MethodCallHandler {
                     videoPlayer.addAndPlay(url, registrar.textures());
                 }
                 result.success(null);
-                break;
             }
-            case "play":
+        });
+        registerVideoMethod("setBufferProfile", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+                BufferProfile bufferProfile = bufferProfileOf(call);
+                if (bufferProfile == null) {
+                    result.error("Buffer profile", "Profile is malformed", null);
+                    return;
+                }
+
+                videoPlayer.setBufferProfile(bufferProfile);
+                result.success(null);
+            }
+        });
+        registerVideoMethod("play", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
                 videoPlayer.play();
                 if (audioPlayer != null) {
                     audioPlayer.pause();
                 }
                 result.success(null);
-                break;
-            case "pause":
+            }
+        });
+        registerVideoMethod("pause", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
                 videoPlayer.pause();
                 result.success(null);
-                break;
-            default:
-                result.notImplemented();
-                break;
-        }
+            }
+        });
     }
 
-    private void downloadMethodCall(String method, MethodCall call, Result result) {
-        switch (method) {
-            case "download": {
+    private void registerDownloadMethods() {
+        methodDispatcher.register(DOWNLOAD_METHOD_TYPE, "initialize", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+                if (downloadManager == null) {
+                    downloadManager = new DownloadManager(getRegistrar().activeContext(), eventBus);
+                } else {
+                    Log.d(TAG, "Already download manager is initialized");
+                    downloadManager.initialize();
+                }
+                result.success(null);
+            }
+        });
+        registerDownloadMethod("download", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
                 String tag = call.argument(MEDIA_TYPE);
                 Map<String, String> stringMap = call.arguments();
-                if(tag == null) {
+                if (tag == null) {
                     result.error("Download", "Tag is null", "Tag should not be null");
                     return;
                 }
-                if(tag.equals(SONG_MEDIA_TAG)) {
+                if (tag.equals(SONG_MEDIA_TAG)) {
                     Song song = Song.fromMap(stringMap);
                     if (song != null) {
                         downloadManager.startDownload(song);
                     }
-                }
-                else if(tag.equals(VIDEO_MEDIA_TAG)) {
+                } else if (tag.equals(VIDEO_MEDIA_TAG)) {
                     Video video = Video.fromMap(stringMap);
                     if (video != null) {
                         downloadManager.startDownload(video);
                     }
                 }
                 result.success(null);
-                break;
             }
-            case "downloadRemove": {
+        });
+        registerDownloadMethod("downloadRemove", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
                 String tag = call.argument(MEDIA_TYPE);
                 Map<String, String> stringMap = call.arguments();
-                if(tag == null) {
+                if (tag == null) {
                     result.error("Download", "Tag is null", "Tag should not be null");
                     return;
                 }
-                if(tag.equals(SONG_MEDIA_TAG)) {
+                if (tag.equals(SONG_MEDIA_TAG)) {
                     Song song = Song.fromMap(stringMap);
                     if (song != null) {
                         downloadManager.removeDownload(song);
                     }
-                }
-                else if(tag.equals(VIDEO_MEDIA_TAG)) {
+                } else if (tag.equals(VIDEO_MEDIA_TAG)) {
                     Video video = Video.fromMap(stringMap);
                     if (video != null) {
                         downloadManager.removeDownload(video);
                     }
                 }
                 result.success(null);
-                break;
             }
-            case "isDownloaded":
+        });
+        registerDownloadMethod("isDownloaded", new MethodHandler() {
+            @Override
+            public void onMethodCall(@NonNull MethodCall call, @NonNull final Result result) {
                 String tag = call.argument(MEDIA_TYPE);
                 Map<String, String> stringMap = call.arguments();
-                if(tag == null) {
+                if (tag == null) {
                     result.error("Download", "Tag is null", "Tag should not be null");
                     return;
                 }
-                if(tag.equals(SONG_MEDIA_TAG)) {
-                    Song song = Song.fromMap(stringMap);
-                    if (song != null) {
-                        result.success(downloadManager.isDownloaded(song));
-                        return;
-                    }
+
+                final Media media;
+                if (tag.equals(SONG_MEDIA_TAG)) {
+                    media = Song.fromMap(stringMap);
+                } else if (tag.equals(VIDEO_MEDIA_TAG)) {
+                    media = Video.fromMap(stringMap);
+                } else {
+                    media = null;
                 }
-                else if(tag.equals(VIDEO_MEDIA_TAG)) {
-                    Video video = Video.fromMap(stringMap);
-                    if (video != null) {
-                        result.success(downloadManager.isDownloaded(video));
-                        return;
-                    }
+                if (media == null) {
+                    result.success(false);
+                    return;
                 }
-                result.success(false);
-                break;
-            default:
-                result.notImplemented();
-                break;
-        }
-    }
-
-    private MethodTypeCall parseMethodName(@NonNull String methodName) {
-        try {
-            Matcher matcher = METHOD_NAME_MATCH.matcher(methodName);
-
-            if (matcher.matches() && matcher.groupCount() >= 2) {
-                String mediaType = matcher.group(1);
-                String command = matcher.group(2);
-                return new MethodTypeCall(mediaType, command);
-            }
-        } catch (Exception e) {
-            Log.d(TAG, e.getMessage());
-        }
-        return new MethodTypeCall(null, methodName);
-    }
 
-    private static class MethodTypeCall {
-        final String methodType;
-        final String method;
+                WorkerExecutor.execute(new WorkerExecutor.Job<String>() {
+                    @Override
+                    String doInBackground() throws JSONException {
+                        return DownloadManager.downloadId(media);
+                    }
 
-        private MethodTypeCall(String methodType, @NonNull String method) {
-            this.methodType = methodType;
-            this.method = method;
-        }
+                    @Override
+                    void onResult(String id) {
+                        result.success(downloadManager.isDownloaded(id));
+                    }
 
-        @NonNull
-        @Override
-        public String toString() {
-            return String.format("MethodTypeCall - methodType %s, method: %s", methodType, method);
-        }
+                    @Override
+                    void onError(@NonNull Exception e) {
+                        Log.d(TAG, "can't parse media to map object. " + e.getMessage());
+                        result.success(false);
+                    }
+                });
+            }
+        });
     }
 }
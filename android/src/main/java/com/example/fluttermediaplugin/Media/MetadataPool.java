@@ -0,0 +1,31 @@
+package com.example.fluttermediaplugin.Media;
+
+import androidx.annotation.NonNull;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * Weak intern pool of song metadata. Artists, albums and album art urls repeat across a
+ * library, so every song of an album refers to the same strings instead of its own copies.
+ * A value is dropped from the pool once no song refers to it anymore.
+ */
+final class MetadataPool {
+    private static final WeakHashMap<String, WeakReference<String>> pool = new WeakHashMap<>();
+
+    private MetadataPool() {
+    }
+
+    /**
+     * @return the pooled string equal to the value, the value itself if there is none yet
+     */
+    static synchronized String intern(@NonNull String value) {
+        WeakReference<String> reference = pool.get(value);
+        String pooled = reference != null ? reference.get() : null;
+        if (pooled == null) {
+            pool.put(value, new WeakReference<>(value));
+            return value;
+        }
+        return pooled;
+    }
+}
@@ -76,6 +76,18 @@ public final class Song implements Media {
         return capitalizeEveryWord(artists);
     }
 
+    public String getRawTitle() {
+        return title;
+    }
+
+    public String getRawAlbum() {
+        return album;
+    }
+
+    public String getRawArtist() {
+        return artists;
+    }
+
     @Override
     public Map<String, Object> toMap() {
         Map<String, Object> songMap = new HashMap<>();
@@ -96,10 +108,15 @@ public final class Song implements Media {
         String album_art_url = mapObject.get(ALBUM_ART_URL_TAG);
         String url = mapObject.get(URL_TAG);
 
+        return create(key, title, artists, album, album_art_url, url);
+    }
+
+    public static Song create(String key, String title, String artists, String album, String album_art_url, String url) {
         if(key == null || title == null || artists == null || album == null || album_art_url == null || url == null) {
             return null;
         }
 
-        return new Song(key, title, artists, album, album_art_url, url);
+        // songs of an album or artist share these, the key, title and url are mostly unique
+        return new Song(key, title, MetadataPool.intern(artists), MetadataPool.intern(album), MetadataPool.intern(album_art_url), url);
     }
 }
@@ -16,6 +16,9 @@ import com.google.android.exoplayer2.Timeline;
 import com.google.android.exoplayer2.source.TrackGroupArray;
 import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
 
+import java.util.List;
+import java.util.Map;
+
 public abstract class MediaExoPlayerListener<T extends Media> implements Player.EventListener {
     private static String TAG = "MediaPlayerManager";
     private Handler playbackPollHandler;
@@ -23,6 +26,7 @@ public abstract class MediaExoPlayerListener<T extends Media> implements Player.
     private boolean isPollingPlayback = false;
     private boolean isPollingBuffering = false;
     private SimpleExoPlayer simpleExoPlayer;
+    private PositionAnchorStream positionAnchorStream;
 
     MediaExoPlayerListener(@NonNull SimpleExoPlayer simpleExoPlayer, @NonNull String handlerThreadName) {
         this.simpleExoPlayer = simpleExoPlayer;
@@ -35,6 +39,54 @@ public abstract class MediaExoPlayerListener<T extends Media> implements Player.
         bufferingPollHandler = new Handler(Looper.getMainLooper());
     }
 
+    /**
+     * Binds the listener to a player created in place of the released one it listened to.
+     */
+    void setPlayer(@NonNull SimpleExoPlayer simpleExoPlayer) {
+        this.simpleExoPlayer = simpleExoPlayer;
+        clear();
+    }
+
+    void setPositionAnchorStream(PositionAnchorStream positionAnchorStream) {
+        if (this.positionAnchorStream != null) {
+            this.positionAnchorStream.setListener(null);
+        }
+        this.positionAnchorStream = positionAnchorStream;
+        if (positionAnchorStream == null) {
+            return;
+        }
+
+        positionAnchorStream.setListener(new PositionAnchorStream.Listener() {
+            @Override
+            public void onListenChanged(boolean isListening) {
+                if (isListening) {
+                    stopPlaybackPolling();
+                    publishPositionAnchor();
+                } else if (simpleExoPlayer.getPlayWhenReady() && simpleExoPlayer.getPlaybackState() == Player.STATE_READY) {
+                    startPlaybackPolling();
+                }
+            }
+        });
+    }
+
+    private boolean isPositionAnchorStreamListening() {
+        return positionAnchorStream != null && positionAnchorStream.isListening();
+    }
+
+    private void publishPositionAnchor() {
+        if (positionAnchorStream != null) {
+            positionAnchorStream.publish(simpleExoPlayer, getCurrentMediaIndex());
+        }
+    }
+
+    /**
+     * @return index of the current media in the playlist, which differs from the player's
+     * window index if only a part of the playlist is materialized
+     */
+    int getCurrentMediaIndex() {
+        return simpleExoPlayer.getCurrentWindowIndex();
+    }
+
     private void stopPlaybackPolling() {
         isPollingPlayback = false;
         if (simpleExoPlayer != null) {
@@ -104,6 +156,9 @@ public abstract class MediaExoPlayerListener<T extends Media> implements Player.
     void onPlaylistChanged(@NonNull Playlist<T> playlist) {
     }
 
+    void onPlaylistDelta(@NonNull Playlist<T> playlist, @NonNull List<Map<String, Object>> deltas) {
+    }
+
     void onMediaAddedToPlaylist(String playlistName, int index, @NonNull T media) {
     }
 
@@ -129,6 +184,7 @@ public abstract class MediaExoPlayerListener<T extends Media> implements Player.
 
     @Override
     public void onTracksChanged(TrackGroupArray trackGroups, TrackSelectionArray trackSelections) {
+        publishPositionAnchor();
     }
 
     @Override
@@ -146,7 +202,7 @@ public abstract class MediaExoPlayerListener<T extends Media> implements Player.
             startBufferPolling();
         }
         if (playbackState == Player.STATE_READY) {
-            if (playWhenReady) {
+            if (playWhenReady && !isPositionAnchorStreamListening()) {
                 startPlaybackPolling();
             } else {
                 stopPlaybackPolling();
@@ -159,6 +215,7 @@ public abstract class MediaExoPlayerListener<T extends Media> implements Player.
             stopBufferingPolling();
         }
 
+        publishPositionAnchor();
         onPlayerStatus("player state " + simpleExoPlayer.getPlaybackState() + ", " + simpleExoPlayer.getPlayWhenReady());
     }
 
@@ -176,13 +233,16 @@ public abstract class MediaExoPlayerListener<T extends Media> implements Player.
 
     @Override
     public void onPositionDiscontinuity(int reason) {
+        publishPositionAnchor();
     }
 
     @Override
     public void onPlaybackParametersChanged(PlaybackParameters playbackParameters) {
+        publishPositionAnchor();
     }
 
     @Override
     public void onSeekProcessed() {
+        publishPositionAnchor();
     }
 }
@@ -0,0 +1,96 @@
+package com.example.fluttermediaplugin;
+
+import androidx.annotation.NonNull;
+
+import com.example.fluttermediaplugin.Media.Media;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Hash index from media key to the first index of the media in a playlist. The count of every
+ * key is kept exact on each edit. Indices are only correct up to the first edited position;
+ * lookups reindex the rest of the list once, so a burst of edits doesn't cost a full reindex
+ * each.
+ */
+final class MediaKeyIndex {
+    private final List<? extends Media> mediaList;
+    private final HashMap<String, Integer> firstIndexByKey = new HashMap<>();
+    private final HashMap<String, Integer> countByKey = new HashMap<>();
+    // indices below this one are correct in firstIndexByKey
+    private int indexedSize = 0;
+
+    MediaKeyIndex(@NonNull List<? extends Media> mediaList) {
+        this.mediaList = mediaList;
+    }
+
+    /**
+     * Must be called after the media were inserted into the list.
+     */
+    void onInserted(int index, @NonNull List<? extends Media> media) {
+        for (Media item : media) {
+            Integer count = countByKey.get(item.getKey());
+            countByKey.put(item.getKey(), count == null ? 1 : count + 1);
+        }
+        indexedSize = Math.min(indexedSize, index);
+    }
+
+    /**
+     * Must be called with the removed media after they were removed from the list.
+     */
+    void onRemoved(int index, @NonNull List<? extends Media> media) {
+        for (Media item : media) {
+            Integer count = countByKey.get(item.getKey());
+            if (count == null || count <= 1) {
+                countByKey.remove(item.getKey());
+                firstIndexByKey.remove(item.getKey());
+            } else {
+                countByKey.put(item.getKey(), count - 1);
+            }
+        }
+        indexedSize = Math.min(indexedSize, index);
+    }
+
+    void onMoved(int from, int newIndex) {
+        indexedSize = Math.min(indexedSize, Math.min(from, newIndex));
+    }
+
+    void clear() {
+        firstIndexByKey.clear();
+        countByKey.clear();
+        indexedSize = 0;
+    }
+
+    boolean contains(@NonNull String key) {
+        return countByKey.containsKey(key);
+    }
+
+    /**
+     * @return the first index of the key, -1 if it is not in the list
+     */
+    int indexOf(@NonNull String key) {
+        if (!countByKey.containsKey(key)) {
+            return -1;
+        }
+
+        Integer index = firstIndexByKey.get(key);
+        if (index == null || index >= indexedSize) {
+            reindex();
+            index = firstIndexByKey.get(key);
+        }
+        return index == null ? -1 : index;
+    }
+
+    private void reindex() {
+        // walks backwards so the first index of a key in the reindexed part is written last,
+        // first indices before the reindexed part stay
+        for (int i = mediaList.size() - 1; i >= indexedSize; i--) {
+            String key = mediaList.get(i).getKey();
+            Integer index = firstIndexByKey.get(key);
+            if (index == null || index >= indexedSize) {
+                firstIndexByKey.put(key, i);
+            }
+        }
+        indexedSize = mediaList.size();
+    }
+}
@@ -83,7 +83,7 @@ public class MediaPlayerNotificationService extends Service {
                 FlutterMediaPlugin.getInstance().getRegistrar().context(), R.string.exo_channel_name, new PlayerNotificationManager.MediaDescriptionAdapter() {
                     @Override
                     public String getCurrentContentTitle(Player player) {
-                        Song song = FlutterMediaPlugin.getInstance().getAudioPlayer().getSongByIndex(player.getCurrentWindowIndex());
+                        Song song = FlutterMediaPlugin.getInstance().getAudioPlayer().getSongByWindowIndex(player.getCurrentWindowIndex());
                         if (song == null) {
                             return "No Name";
                         }
@@ -108,7 +108,7 @@ public class MediaPlayerNotificationService extends Service {
 
                     @Override
                     public String getCurrentContentText(Player player) {
-                        Song song = FlutterMediaPlugin.getInstance().getAudioPlayer().getSongByIndex(player.getCurrentWindowIndex());
+                        Song song = FlutterMediaPlugin.getInstance().getAudioPlayer().getSongByWindowIndex(player.getCurrentWindowIndex());
                         if (song == null) {
                             return "No Artist";
                         }
@@ -134,7 +134,7 @@ public class MediaPlayerNotificationService extends Service {
                     @Nullable
                     @Override
                     public Bitmap getCurrentLargeIcon(Player player, PlayerNotificationManager.BitmapCallback callback) {
-                        Song song = FlutterMediaPlugin.getInstance().getAudioPlayer().getSongByIndex(player.getCurrentWindowIndex());
+                        Song song = FlutterMediaPlugin.getInstance().getAudioPlayer().getSongByWindowIndex(player.getCurrentWindowIndex());
                         String uri;
                         if (song != null) {
                             uri = song.getAlbumArtUri();
@@ -0,0 +1,65 @@
+package com.example.fluttermediaplugin;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.exoplayer2.extractor.DefaultExtractorsFactory;
+import com.google.android.exoplayer2.source.ProgressiveMediaSource;
+
+import java.util.Map;
+
+/**
+ * Extractor flags and loading interval of the progressive media sources a playlist creates.
+ * The flags are the ones of the matching ExoPlayer extractor, e.g. Mp3Extractor's
+ * FLAG_ENABLE_CONSTANT_BITRATE_SEEKING. Settings are applied to playlists set afterwards.
+ */
+final class MediaSourceSettings {
+    static final MediaSourceSettings DEFAULT = new MediaSourceSettings(0, 0, 0,
+            ProgressiveMediaSource.DEFAULT_LOADING_CHECK_INTERVAL_BYTES);
+
+    private static final String MP3_EXTRACTOR_FLAGS_TAG = "mp3ExtractorFlags";
+    private static final String MP4_EXTRACTOR_FLAGS_TAG = "mp4ExtractorFlags";
+    private static final String ADTS_EXTRACTOR_FLAGS_TAG = "adtsExtractorFlags";
+    private static final String CONTINUE_LOADING_CHECK_INTERVAL_BYTES_TAG = "continueLoadingCheckIntervalBytes";
+
+    final int mp3ExtractorFlags;
+    final int mp4ExtractorFlags;
+    final int adtsExtractorFlags;
+    final int continueLoadingCheckIntervalBytes;
+
+    private MediaSourceSettings(int mp3ExtractorFlags, int mp4ExtractorFlags, int adtsExtractorFlags, int continueLoadingCheckIntervalBytes) {
+        this.mp3ExtractorFlags = mp3ExtractorFlags;
+        this.mp4ExtractorFlags = mp4ExtractorFlags;
+        this.adtsExtractorFlags = adtsExtractorFlags;
+        this.continueLoadingCheckIntervalBytes = continueLoadingCheckIntervalBytes;
+    }
+
+    DefaultExtractorsFactory createExtractorsFactory() {
+        return new DefaultExtractorsFactory()
+                .setMp3ExtractorFlags(mp3ExtractorFlags)
+                .setMp4ExtractorFlags(mp4ExtractorFlags)
+                .setAdtsExtractorFlags(adtsExtractorFlags);
+    }
+
+    /**
+     * Missing entries keep their default value.
+     *
+     * @return null if an entry is not an integer or the interval is not positive
+     */
+    static MediaSourceSettings fromMap(@NonNull Map<String, Object> map) {
+        Object mp3ExtractorFlags = valueOrDefault(map, MP3_EXTRACTOR_FLAGS_TAG, DEFAULT.mp3ExtractorFlags);
+        Object mp4ExtractorFlags = valueOrDefault(map, MP4_EXTRACTOR_FLAGS_TAG, DEFAULT.mp4ExtractorFlags);
+        Object adtsExtractorFlags = valueOrDefault(map, ADTS_EXTRACTOR_FLAGS_TAG, DEFAULT.adtsExtractorFlags);
+        Object interval = valueOrDefault(map, CONTINUE_LOADING_CHECK_INTERVAL_BYTES_TAG, DEFAULT.continueLoadingCheckIntervalBytes);
+        if (!(mp3ExtractorFlags instanceof Integer) || !(mp4ExtractorFlags instanceof Integer)
+                || !(adtsExtractorFlags instanceof Integer) || !(interval instanceof Integer) || (Integer) interval <= 0) {
+            return null;
+        }
+
+        return new MediaSourceSettings((Integer) mp3ExtractorFlags, (Integer) mp4ExtractorFlags, (Integer) adtsExtractorFlags, (Integer) interval);
+    }
+
+    private static Object valueOrDefault(Map<String, Object> map, String key, int defaultValue) {
+        Object value = map.get(key);
+        return value != null ? value : defaultValue;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.fluttermediaplugin;
+
+import androidx.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel.Result;
+
+/**
+ * Maps every full method name (e.g. "AUDIO_TYPE/play") to its handler once, so an incoming
+ * call is resolved with a single hash lookup instead of parsing the method name.
+ */
+final class MethodDispatcher {
+    interface MethodHandler {
+        void onMethodCall(@NonNull MethodCall call, @NonNull Result result);
+    }
+
+    private static final class Entry {
+        final MethodHandler handler;
+        long invocationCount;
+
+        Entry(MethodHandler handler) {
+            this.handler = handler;
+        }
+    }
+
+    private final HashMap<String, Entry> entries = new HashMap<>();
+
+    void register(@NonNull String methodType, @NonNull String method, @NonNull MethodHandler handler) {
+        entries.put(methodType + "/" + method, new Entry(handler));
+    }
+
+    /**
+     * @return false if no handler is registered for the method of the call
+     */
+    boolean dispatch(@NonNull MethodCall call, @NonNull Result result) {
+        Entry entry = entries.get(call.method);
+        if (entry == null) {
+            return false;
+        }
+
+        entry.invocationCount++;
+        entry.handler.onMethodCall(call, result);
+        return true;
+    }
+
+    long getInvocationCount(@NonNull String fullMethodName) {
+        Entry entry = entries.get(fullMethodName);
+        return entry == null ? 0 : entry.invocationCount;
+    }
+
+    Map<String, Long> getInvocationCounts() {
+        Map<String, Long> counts = new HashMap<>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if (entry.getValue().invocationCount > 0) {
+                counts.put(entry.getKey(), entry.getValue().invocationCount);
+            }
+        }
+        return counts;
+    }
+
+    void resetInvocationCounts() {
+        for (Entry entry : entries.values()) {
+            entry.invocationCount = 0;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.example.fluttermediaplugin;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Choreographer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import io.flutter.plugin.common.MethodChannel;
+
+import static com.example.fluttermediaplugin.FlutterMediaPlugin.EVENT_METHOD_TYPE;
+
+/**
+ * Collects the events the players send to dart and flushes them once per frame. Events of a
+ * latest wins method replace the pending event of the same method, every other event must be
+ * delivered and is kept in order. A frame with more than one event is sent as a single
+ * EVENT_TYPE/onEvents message.
+ * <p>
+ * While dart hasn't replied to {@link #MAX_IN_FLIGHT_MESSAGES} messages, e.g. during a cold
+ * start, events stay pending. The pending queue is bounded, once it is full:
+ * <ul>
+ * <li>the oldest latest wins event is dropped, stale position and progress updates are not
+ * delivered after they matter</li>
+ * <li>otherwise the pending events of a {@link Resync} group are replaced by a single event
+ * from which dart catches up</li>
+ * <li>otherwise the oldest event is dropped</li>
+ * </ul>
+ */
+final class OutboundEventBus {
+    private static final String TAG = "OutboundEventBus";
+    private static final String EVENTS_METHOD = EVENT_METHOD_TYPE + "/onEvents";
+    private static final int MAX_IN_FLIGHT_MESSAGES = 2;
+    private static final int MAX_PENDING_EVENTS = 64;
+
+    /**
+     * Describes the current state of what a group of events changes, e.g. the revision of a
+     * playlist whose edits are in the group.
+     */
+    interface Resync {
+        @NonNull
+        String getMethod();
+
+        Object getArguments();
+    }
+
+    private static final class PendingEvent {
+        final String method;
+        // null for events which must be delivered
+        final String coalescingKey;
+        final Object arguments;
+        final long sentNanos;
+
+        PendingEvent(String method, String coalescingKey, Object arguments) {
+            this.method = method;
+            this.coalescingKey = coalescingKey;
+            this.arguments = arguments;
+            sentNanos = SystemClock.elapsedRealtimeNanos();
+        }
+    }
+
+    private MethodChannel channel;
+    private final ChannelMetrics channelMetrics;
+    private final HashSet<String> latestWinsMethods = new HashSet<>();
+    private final HashMap<String, Resync> resyncsByMethod = new HashMap<>();
+    private final ArrayList<PendingEvent> pendingEvents = new ArrayList<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Choreographer choreographer;
+    private boolean isFrameScheduled = false;
+    private int inFlightMessages = 0;
+
+    private long deliveredEvents = 0;
+    private long droppedEvents = 0;
+
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            isFrameScheduled = false;
+            flush();
+        }
+    };
+
+    /**
+     * Must be created on the main thread, since events are flushed with its choreographer.
+     */
+    OutboundEventBus(@NonNull MethodChannel channel, @NonNull ChannelMetrics channelMetrics) {
+        this.channel = channel;
+        this.channelMetrics = channelMetrics;
+        choreographer = Choreographer.getInstance();
+    }
+
+    void setChannel(@NonNull MethodChannel channel) {
+        this.channel = channel;
+        // replies of the previous channel never arrive
+        inFlightMessages = 0;
+        scheduleFlush();
+    }
+
+    /**
+     * Only for events which carry the whole state they describe, e.g. the position, so the
+     * latest one makes the ones before it obsolete. Status messages and transitions must not
+     * be latest wins, dart would miss the ones replaced.
+     */
+    void setLatestWins(@NonNull String method) {
+        latestWinsMethods.add(method);
+    }
+
+    /**
+     * When the pending queue is full, the pending events of the methods are collapsed into one
+     * event of the resync, which collapses again with later ones. Only for events dart can
+     * miss as long as it catches up from the resync event.
+     */
+    void setResync(@NonNull Resync resync, @NonNull String... methods) {
+        for (String method : methods) {
+            resyncsByMethod.put(method, resync);
+        }
+        resyncsByMethod.put(resync.getMethod(), resync);
+    }
+
+    Map<String, Object> getCounters() {
+        Map<String, Object> counters = new HashMap<>();
+        counters.put("delivered", deliveredEvents);
+        counters.put("dropped", droppedEvents);
+        counters.put("pending", pendingEvents.size());
+        counters.put("inFlight", inFlightMessages);
+        return counters;
+    }
+
+    void send(@NonNull String method, Object arguments) {
+        send(method, arguments, latestWinsMethods.contains(method) ? method : null);
+    }
+
+    /**
+     * @param coalescingKey a pending event with the same key is replaced by this one,
+     *                      null if the event must be delivered
+     */
+    void send(@NonNull final String method, final Object arguments, @Nullable final String coalescingKey) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    send(method, arguments, coalescingKey);
+                }
+            });
+            return;
+        }
+
+        if (coalescingKey != null) {
+            for (int i = 0; i < pendingEvents.size(); i++) {
+                if (coalescingKey.equals(pendingEvents.get(i).coalescingKey)) {
+                    pendingEvents.remove(i);
+                    droppedEvents++;
+                    break;
+                }
+            }
+        }
+        pendingEvents.add(new PendingEvent(method, coalescingKey, arguments));
+
+        if (pendingEvents.size() > MAX_PENDING_EVENTS && !dropOldestLatestWinsEvent() && !collapseResyncEvents()) {
+            PendingEvent event = pendingEvents.remove(0);
+            droppedEvents++;
+            Log.w(TAG, "Dropped " + event.method + ", the queue is full of events which must be delivered");
+        }
+        scheduleFlush();
+    }
+
+    private boolean dropOldestLatestWinsEvent() {
+        for (int i = 0; i < pendingEvents.size(); i++) {
+            if (pendingEvents.get(i).coalescingKey != null) {
+                pendingEvents.remove(i);
+                droppedEvents++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replaces the pending events of the first resync group with more than one of them by the
+     * resync event, at the place of the last one.
+     */
+    private boolean collapseResyncEvents() {
+        HashMap<Resync, Integer> counts = new HashMap<>();
+        Resync resync = null;
+        for (PendingEvent event : pendingEvents) {
+            Resync eventResync = resyncsByMethod.get(event.method);
+            if (eventResync == null) {
+                continue;
+            }
+            Integer count = counts.get(eventResync);
+            counts.put(eventResync, count == null ? 1 : count + 1);
+            if (count != null) {
+                resync = eventResync;
+                break;
+            }
+        }
+        if (resync == null) {
+            return false;
+        }
+
+        int insertIndex = 0;
+        int i = 0;
+        while (i < pendingEvents.size()) {
+            if (resyncsByMethod.get(pendingEvents.get(i).method) == resync) {
+                pendingEvents.remove(i);
+                droppedEvents++;
+                insertIndex = i;
+            } else {
+                i++;
+            }
+        }
+        pendingEvents.add(insertIndex, new PendingEvent(resync.getMethod(), null, resync.getArguments()));
+        return true;
+    }
+
+    private void scheduleFlush() {
+        if (!isFrameScheduled && !pendingEvents.isEmpty() && inFlightMessages < MAX_IN_FLIGHT_MESSAGES) {
+            isFrameScheduled = true;
+            choreographer.postFrameCallback(frameCallback);
+        }
+    }
+
+    private void flush() {
+        if (pendingEvents.isEmpty() || inFlightMessages >= MAX_IN_FLIGHT_MESSAGES) {
+            return;
+        }
+
+        final MethodChannel messageChannel = channel;
+        final int eventCount = pendingEvents.size();
+        MethodChannel.Result reply = new MethodChannel.Result() {
+            @Override
+            public void success(Object result) {
+                onReply(messageChannel);
+            }
+
+            @Override
+            public void error(String errorCode, String errorMessage, Object errorDetails) {
+                onReply(messageChannel);
+            }
+
+            @Override
+            public void notImplemented() {
+                onReply(messageChannel);
+            }
+        };
+
+        inFlightMessages++;
+        if (eventCount == 1) {
+            PendingEvent event = pendingEvents.get(0);
+            channel.invokeMethod(event.method, event.arguments, reply);
+        } else {
+            ArrayList<Object> events = new ArrayList<>(eventCount * 2);
+            for (PendingEvent event : pendingEvents) {
+                events.add(event.method);
+                events.add(event.arguments);
+            }
+            channel.invokeMethod(EVENTS_METHOD, events, reply);
+        }
+        if (channelMetrics.isEnabled()) {
+            long nowNanos = SystemClock.elapsedRealtimeNanos();
+            for (PendingEvent event : pendingEvents) {
+                channelMetrics.recordOutbound(event.method, event.arguments, nowNanos - event.sentNanos);
+            }
+        }
+        deliveredEvents += eventCount;
+        pendingEvents.clear();
+    }
+
+    private void onReply(MethodChannel messageChannel) {
+        if (messageChannel != channel) {
+            return;
+        }
+        inFlightMessages--;
+        scheduleFlush();
+    }
+}
@@ -4,18 +4,26 @@ import android.net.Uri;
 import android.os.Handler;
 
 import androidx.annotation.NonNull;
-import io.flutter.plugin.common.MethodChannel;
+import androidx.annotation.Nullable;
 
+import android.util.JsonReader;
+import android.util.JsonToken;
 import android.util.Log;
 
 import com.example.fluttermediaplugin.Media.Media;
 import com.example.fluttermediaplugin.Media.Song;
 import com.example.fluttermediaplugin.Media.Video;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Player;
 import com.google.android.exoplayer2.SimpleExoPlayer;
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.extractor.ExtractorsFactory;
 import com.google.android.exoplayer2.source.ConcatenatingMediaSource;
 import com.google.android.exoplayer2.source.MediaSource;
 import com.google.android.exoplayer2.source.MediaSourceEventListener;
 import com.google.android.exoplayer2.source.ProgressiveMediaSource;
+import com.google.android.exoplayer2.source.ShuffleOrder;
+import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory;
 import com.google.android.exoplayer2.upstream.cache.CacheDataSourceFactory;
 
@@ -23,70 +31,319 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 
+import static com.example.fluttermediaplugin.Utility.MediaIds.ALBUM_ART_URL_TAG;
+import static com.example.fluttermediaplugin.Utility.MediaIds.KEY_TAG;
+import static com.example.fluttermediaplugin.Utility.MediaIds.SONG_ALBUM_TAG;
+import static com.example.fluttermediaplugin.Utility.MediaIds.SONG_ARTISTS_TAG;
+import static com.example.fluttermediaplugin.Utility.MediaIds.TITLE_TAG;
+import static com.example.fluttermediaplugin.Utility.MediaIds.URL_TAG;
+
+/**
+ * Media of a playlist and the ConcatenatingMediaSource playing them. A lazy playlist only
+ * materializes the media sources of a window around the current media in play order, so that
+ * preparing and editing a very large playlist doesn't scale with its length. Indices passed to
+ * and returned from a playlist are always indices into the whole media list.
+ */
 class Playlist<T extends Media> {
     private static final String TAG = "Playlist";
     private static String MEDIA_PLAYLIST = "mediaPlaylist";
     private static String PLAYLIST_NAME = "playlistName";
 
+    // media sources materialized before and after the current media of a lazy playlist
+    private static final int LAZY_WINDOW_BEHIND = 2;
+    private static final int LAZY_WINDOW_AHEAD = 5;
+
     private String playlistName;
     private ArrayList<T> mediaList;
 
     private SimpleExoPlayer simpleExoPlayer;
     private ConcatenatingMediaSource concatenatingMediaSource;
-    private CacheDataSourceFactory cacheDataSourceFactory;
+    private DataSource.Factory cacheDataSourceFactory;
+    private final PlaylistChangeLog changeLog = new PlaylistChangeLog();
+    private final MediaKeyIndex keyIndex;
+    // built on the first search, kept up to date afterwards
+    private QueueSearchIndex searchIndex;
+
+    private final boolean isLazy;
+    // media of the materialized window in source order, only used by a lazy playlist
+    private final ArrayList<T> windowMedia = new ArrayList<>();
+    // play order of the media while shuffle is enabled. The media source of a playlist which
+    // isn't lazy applies the same edits to its own copy, moves and reseeds are set explicitly.
+    private SeededShuffleOrder shuffleOrder;
+    private int currentIndex = -1;
+    private final Timeline.Window window = new Timeline.Window();
+    // where playback resumes once a suspended playlist is played again
+    private int resumeIndex = 0;
+    private long resumePositionMs = 0;
+
+    // shared by all media sources and completion actions of this playlist
+    private final ProgressiveMediaSource.Factory mediaSourceFactory;
+    private final ExtractorsFactory extractorsFactory;
+    private final MediaSourceSettings mediaSourceSettings;
+    private final Handler handler;
+
+    Playlist(@NonNull String playlistName, @NonNull SimpleExoPlayer simpleExoPlayer, @NonNull MediaSourceEventListener playlistEventListener, @NonNull DefaultDataSourceFactory dataSourceFactory, @NonNull MediaSourceSettings mediaSourceSettings, boolean isLazy, long shuffleSeed) {
+        this(playlistName, simpleExoPlayer, playlistEventListener,
+                new CacheDataSourceFactory(DownloadManager.getDownloadCache(FlutterMediaPlugin.getInstance().getRegistrar().activeContext()), dataSourceFactory),
+                mediaSourceSettings, isLazy, shuffleSeed);
+    }
 
-    Playlist(@NonNull String playlistName, @NonNull SimpleExoPlayer simpleExoPlayer, @NonNull MediaSourceEventListener playlistEventListener, @NonNull DefaultDataSourceFactory dataSourceFactory) {
+    /**
+     * @param cacheDataSourceFactory reads the media of the playlist
+     */
+    Playlist(@NonNull String playlistName, @NonNull SimpleExoPlayer simpleExoPlayer, @NonNull MediaSourceEventListener playlistEventListener, @NonNull DataSource.Factory cacheDataSourceFactory, @NonNull MediaSourceSettings mediaSourceSettings, boolean isLazy, long shuffleSeed) {
         this.playlistName = playlistName;
         this.simpleExoPlayer = simpleExoPlayer;
-        cacheDataSourceFactory = new CacheDataSourceFactory(DownloadManager.getDownloadCache(FlutterMediaPlugin.getInstance().getRegistrar().activeContext()), dataSourceFactory);
-        concatenatingMediaSource = new ConcatenatingMediaSource();
-        concatenatingMediaSource.addEventListener(new Handler(), playlistEventListener);
+        this.mediaSourceSettings = mediaSourceSettings;
+        this.isLazy = isLazy;
+        handler = new Handler(simpleExoPlayer.getApplicationLooper());
+        this.cacheDataSourceFactory = cacheDataSourceFactory;
+        extractorsFactory = mediaSourceSettings.createExtractorsFactory();
+        mediaSourceFactory = createMediaSourceFactory();
+        shuffleOrder = new SeededShuffleOrder(shuffleSeed);
+        // the play order of a lazy playlist is kept here, the player must play its window as is
+        concatenatingMediaSource = isLazy
+                ? new ConcatenatingMediaSource(false, new ShuffleOrder.UnshuffledShuffleOrder(0))
+                : new ConcatenatingMediaSource(false, new SeededShuffleOrder(shuffleSeed));
+        concatenatingMediaSource.addEventListener(handler, playlistEventListener);
         mediaList = new ArrayList<>();
+        keyIndex = new MediaKeyIndex(mediaList);
     }
 
-    void prepare(@NonNull ArrayList<T> mediaList, final MethodChannel.Result result) {
-        for (int i = 0; i < mediaList.size(); i++) {
-            if(i == mediaList.size() - 1) {
-                addMedia(mediaList.get(i), new Runnable() {
-                    @Override
-                    public void run() {
-                        result.success(true);
-                    }
-                });
-            }
-            else {
-                addMedia(mediaList.get(i));
+    /**
+     * @param startIndex      index of the media to start at
+     * @param startPositionMs position in the media to start at
+     */
+    void prepare(@NonNull ArrayList<T> mediaList, int startIndex, long startPositionMs, @NonNull Runnable actionOnPrepared) {
+        if (isLazy) {
+            this.mediaList.addAll(mediaList);
+            keyIndex.onInserted(0, mediaList);
+            shuffleOrder = shuffleOrder.cloneAndInsert(0, mediaList.size());
+            currentIndex = mediaList.isEmpty() ? -1 : startIndex;
+            refreshWindow(actionOnPrepared, startPositionMs);
+        } else {
+            ArrayList<MediaSource> mediaSources = new ArrayList<>(mediaList.size());
+            for (T media : mediaList) {
+                mediaSources.add(mediaSourceFactory.createMediaSource(Uri.parse(media.getUrl())));
             }
+            concatenatingMediaSource.addMediaSources(mediaSources, handler, actionOnPrepared);
+            this.mediaList.addAll(mediaList);
+            keyIndex.onInserted(0, mediaList);
+            // the media source shuffles its sources the same way once it is prepared
+            shuffleOrder = shuffleOrder.cloneAndInsert(0, mediaList.size());
         }
 
         simpleExoPlayer.prepare(concatenatingMediaSource);
+        if (!isLazy && (startIndex > 0 || startPositionMs > 0)) {
+            // resolved once the timeline is known
+            simpleExoPlayer.seekTo(startIndex, startPositionMs);
+        }
+        changeLog.reset();
     }
 
     int getSize() {
         return mediaList.size();
     }
 
+    boolean isLazy() {
+        return isLazy;
+    }
+
+    long getRevision() {
+        return changeLog.getRevision();
+    }
+
+    Map<String, Object> getLastDelta() {
+        return changeLog.getLastDelta();
+    }
+
+    /**
+     * @return the deltas after the given revision, or null if dart needs a full snapshot
+     */
+    ArrayList<Map<String, Object>> deltasSince(long revision) {
+        return changeLog.deltasSince(revision);
+    }
+
+    List<T> getMediaList() {
+        return Collections.unmodifiableList(mediaList);
+    }
+
     String getPlaylistName() {
         return playlistName;
     }
 
     T getMediaAtIndex(int index) {
-        if (getSize() <= 0 && index >= getSize())
+        if (index < 0 || index >= getSize())
             return null;
         return mediaList.get(index);
     }
 
-    void skipToIndex(int index) {
-        if (index >= concatenatingMediaSource.getSize() || index < 0) {
+    /**
+     * @return the first index of the media with the key, -1 if it is not in the playlist
+     */
+    int indexOfKey(@NonNull String key) {
+        return keyIndex.indexOf(key);
+    }
+
+    boolean containsKey(@NonNull String key) {
+        return keyIndex.contains(key);
+    }
+
+    /**
+     * @return the first limit indices of media matching every token of the query as a prefix
+     * of their title, artists or album, in playlist order. A media queued more than once is
+     * returned at each of its indices.
+     */
+    int[] search(@NonNull String query, int limit) {
+        if (searchIndex == null) {
+            searchIndex = new QueueSearchIndex();
+            searchIndex.onInserted(mediaList);
+        }
+
+        IdentityHashMap<Media, Integer> matches = searchIndex.search(query);
+        int matchCount = 0;
+        for (int queued : matches.values()) {
+            matchCount += queued;
+        }
+
+        if (matchCount > limit || matchCount > matches.size()) {
+            // many matches or duplicates, the first ones in playlist order end the walk
+            int[] indices = new int[Math.min(matchCount, limit)];
+            int count = 0;
+            for (int i = 0; i < mediaList.size() && count < indices.length; i++) {
+                if (matches.containsKey(mediaList.get(i))) {
+                    indices[count++] = i;
+                }
+            }
+            return Arrays.copyOf(indices, count);
+        }
+
+        // at most limit media queued once each, resolved through the key index
+        int[] indices = new int[matchCount];
+        int count = 0;
+        for (Media media : matches.keySet()) {
+            int index = indexOfMedia(media);
+            if (index >= 0) {
+                indices[count++] = index;
+            }
+        }
+        Arrays.sort(indices, 0, count);
+        return Arrays.copyOf(indices, count);
+    }
+
+    /**
+     * @return index of the current media in the media list
+     */
+    int getCurrentIndex() {
+        if (!isLazy) {
+            return simpleExoPlayer.getCurrentWindowIndex();
+        }
+
+        Object tag = simpleExoPlayer.getCurrentTag();
+        if (tag != null && (currentIndex < 0 || currentIndex >= mediaList.size() || mediaList.get(currentIndex) != tag)) {
+            int index = indexOfMedia(tag);
+            if (index >= 0) {
+                currentIndex = index;
+            }
+        }
+        return currentIndex;
+    }
+
+    /**
+     * @return index of the media played after the current one, C.INDEX_UNSET if there is none
+     */
+    int getNextIndex() {
+        if (!isLazy) {
+            return simpleExoPlayer.getNextWindowIndex();
+        }
+
+        int index = getCurrentIndex();
+        if (index < 0) {
+            return C.INDEX_UNSET;
+        }
+        int repeatMode = simpleExoPlayer.getRepeatMode();
+        if (repeatMode == Player.REPEAT_MODE_ONE) {
+            return index;
+        }
+        int position = positionOf(index) + 1;
+        if (position >= mediaList.size()) {
+            if (repeatMode != Player.REPEAT_MODE_ALL) {
+                return C.INDEX_UNSET;
+            }
+            position = 0;
+        }
+        return indexAt(position);
+    }
+
+    /**
+     * @return up to count media played after the current one, in play order. A repeated
+     * playlist continues at its start, a repeated media isn't counted again.
+     */
+    List<T> getUpcomingMedia(int count) {
+        ArrayList<T> upcoming = new ArrayList<>(count);
+        int index = getCurrentIndex();
+        int size = mediaList.size();
+        if (index < 0 || index >= size) {
+            return upcoming;
+        }
+
+        boolean wraps = simpleExoPlayer.getRepeatMode() != Player.REPEAT_MODE_OFF;
+        int position = positionOf(index);
+        for (int i = 1; i <= count && i < size; i++) {
+            int upcomingPosition = position + i;
+            if (upcomingPosition >= size) {
+                if (!wraps) {
+                    break;
+                }
+                upcomingPosition -= size;
+            }
+            upcoming.add(mediaList.get(indexAt(upcomingPosition)));
+        }
+        return upcoming;
+    }
+
+    /**
+     * @return index in the media list of a window of the player's timeline, C.INDEX_UNSET if
+     * the window doesn't exist
+     */
+    int indexOfWindow(int windowIndex) {
+        if (!isLazy) {
+            return windowIndex;
+        }
+
+        Timeline timeline = simpleExoPlayer.getCurrentTimeline();
+        if (windowIndex < 0 || windowIndex >= timeline.getWindowCount()) {
+            return C.INDEX_UNSET;
+        }
+        return indexOfMedia(timeline.getWindow(windowIndex, window, true).tag);
+    }
+
+    void skipToIndex(final int index) {
+        if (index < 0 || index >= (isLazy ? mediaList.size() : concatenatingMediaSource.getSize())) {
             Log.w(TAG, "can't skip to index: " + index + ", MediaPlaylist size: " + mediaList.size());
             return;
         }
-        simpleExoPlayer.seekTo(index, 0);
+        if (!isLazy) {
+            simpleExoPlayer.seekTo(index, 0);
+            return;
+        }
+
+        // a media outside of the window is materialized and sought to by refreshing the window
+        int windowIndex = windowMedia.indexOf(mediaList.get(index));
+        if (windowIndex >= 0) {
+            simpleExoPlayer.seekTo(windowIndex, 0);
+        }
+        currentIndex = index;
+        refreshWindow(null);
     }
 
     void skipToPrevious() {
@@ -101,18 +358,86 @@ class Playlist<T extends Media> {
         }
     }
 
-    private void addMedia(@NonNull T media) {
-        Uri uri = Uri.parse(media.getUrl());
-        MediaSource mediaSource = new ProgressiveMediaSource.Factory(cacheDataSourceFactory).createMediaSource(uri);
-        concatenatingMediaSource.addMediaSource(mediaSource);
-        mediaList.add(media);
+    /**
+     * Moves the materialized window of a lazy playlist along once the player moved on to
+     * another media.
+     */
+    void onCurrentWindowChanged() {
+        if (!isLazy || currentIndex < 0) {
+            return;
+        }
+
+        Object tag = simpleExoPlayer.getCurrentTag();
+        if (tag == null || mediaList.get(currentIndex) == tag) {
+            return;
+        }
+        int index = indexOfMedia(tag);
+        if (index >= 0) {
+            currentIndex = index;
+            refreshWindow(null);
+        }
     }
 
-    private void addMedia(@NonNull T media, @NonNull Runnable actionOnCompletion) {
-        Uri uri = Uri.parse(media.getUrl());
-        MediaSource mediaSource = new ProgressiveMediaSource.Factory(cacheDataSourceFactory).createMediaSource(uri);
-        concatenatingMediaSource.addMediaSource(mediaSource, new Handler(), actionOnCompletion);
-        mediaList.add(media);
+    /**
+     * Rebuilds the materialized window of a lazy playlist after the repeat or shuffle mode changed.
+     */
+    void onPlayOrderChanged() {
+        if (!isLazy) {
+            return;
+        }
+
+        refreshWindow(null);
+    }
+
+    /**
+     * Replaces the shuffle order with a new one of the seed. The same seed and media count
+     * always give the same order.
+     */
+    void setShuffleSeed(long seed) {
+        shuffleOrder = new SeededShuffleOrder(seed).cloneAndInsert(0, mediaList.size());
+        if (!isLazy) {
+            concatenatingMediaSource.setShuffleOrder(shuffleOrder);
+        } else if (simpleExoPlayer.getShuffleModeEnabled()) {
+            refreshWindow(null);
+        }
+    }
+
+    /**
+     * @return the media indices in shuffled play order
+     */
+    int[] getShuffleOrder() {
+        return shuffleOrder.toArray();
+    }
+
+    /**
+     * Keeps the current position, so that the playlist resumes there after another playlist
+     * was played. The media sources stay built.
+     */
+    void suspend() {
+        resumeIndex = Math.max(0, getCurrentIndex());
+        resumePositionMs = simpleExoPlayer.getCurrentPosition();
+    }
+
+    /**
+     * Prepares the player with the media sources built before the playlist was suspended and
+     * seeks to where it was suspended.
+     */
+    void resume(@Nullable Runnable actionOnPrepared) {
+        int windowIndex = resumeIndex;
+        if (isLazy) {
+            // the repeat and shuffle mode may have changed while the playlist was suspended
+            refreshWindow(null);
+            windowIndex = currentIndex >= 0 ? windowMedia.indexOf(mediaList.get(currentIndex)) : -1;
+        }
+
+        simpleExoPlayer.prepare(concatenatingMediaSource);
+        if (windowIndex >= 0 && windowIndex < concatenatingMediaSource.getSize()) {
+            simpleExoPlayer.seekTo(windowIndex, resumePositionMs);
+        }
+        if (actionOnPrepared != null) {
+            // an empty edit, it completes once the media sources are prepared
+            concatenatingMediaSource.removeMediaSourceRange(0, 0, handler, actionOnPrepared);
+        }
     }
 
     boolean addMediaAtIndex(int index,@NonNull T media) {
@@ -121,10 +446,15 @@ class Playlist<T extends Media> {
             return false;
         }
 
+        if (isLazy) {
+            insertLazyMedia(index, Collections.singletonList(media), null);
+            return true;
+        }
+
         Uri uri = Uri.parse(media.getUrl());
-        MediaSource mediaSource = new ProgressiveMediaSource.Factory(cacheDataSourceFactory).createMediaSource(uri);
+        MediaSource mediaSource = mediaSourceFactory.createMediaSource(uri);
         concatenatingMediaSource.addMediaSource(index, mediaSource);
-        mediaList.add(index, media);
+        insertIntoMediaList(index, Collections.singletonList(media));
         return true;
     }
 
@@ -134,17 +464,26 @@ class Playlist<T extends Media> {
             return false;
         }
 
+        if (isLazy) {
+            insertLazyMedia(index, Collections.singletonList(media), actionOnCompletion);
+            return true;
+        }
+
         Uri uri = Uri.parse(media.getUrl());
-        MediaSource mediaSource = new ProgressiveMediaSource.Factory(cacheDataSourceFactory).createMediaSource(uri);
-        concatenatingMediaSource.addMediaSource(index, mediaSource, new Handler(), actionOnCompletion);
-        mediaList.add(index, media);
+        MediaSource mediaSource = mediaSourceFactory.createMediaSource(uri);
+        concatenatingMediaSource.addMediaSource(index, mediaSource, handler, actionOnCompletion);
+        insertIntoMediaList(index, Collections.singletonList(media));
         return true;
     }
 
     boolean removeMediaAtIndex(@NonNull T media, int index) {
-        if(index >= 0 && index < mediaList.size() && index < concatenatingMediaSource.getSize()) {
+        if(index >= 0 && index < mediaList.size() && (isLazy || index < concatenatingMediaSource.getSize())) {
             if(mediaList.get(index).getKey().equals(media.getKey())) {
-                mediaList.remove(index);
+                if (isLazy) {
+                    removeLazyMedia(index, index + 1, null);
+                    return true;
+                }
+                removeFromMediaList(index, index + 1);
                 concatenatingMediaSource.removeMediaSource(index);
                 return true;
             }
@@ -153,9 +492,309 @@ class Playlist<T extends Media> {
         return false;
     }
 
+    boolean removeMediaAtIndex(@NonNull T media, int index, @NonNull Runnable actionOnCompletion) {
+        if(index >= 0 && index < mediaList.size() && (isLazy || index < concatenatingMediaSource.getSize())) {
+            if(mediaList.get(index).getKey().equals(media.getKey())) {
+                if (isLazy) {
+                    removeLazyMedia(index, index + 1, actionOnCompletion);
+                    return true;
+                }
+                removeFromMediaList(index, index + 1);
+                concatenatingMediaSource.removeMediaSource(index, handler, actionOnCompletion);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Inserts all media with a single edit of the media source, so the player's timeline is
+     * rebuilt once.
+     */
+    boolean addMediaAtIndex(int index, @NonNull List<T> media, @Nullable Runnable actionOnCompletion) {
+        if (index > mediaList.size() || index < 0) {
+            Log.e(TAG, index + " is out of bound. MediaList size: " + mediaList.size());
+            return false;
+        }
+
+        if (isLazy) {
+            insertLazyMedia(index, media, actionOnCompletion);
+            return true;
+        }
+
+        ArrayList<MediaSource> mediaSources = new ArrayList<>(media.size());
+        for (T item : media) {
+            mediaSources.add(mediaSourceFactory.createMediaSource(Uri.parse(item.getUrl())));
+        }
+        concatenatingMediaSource.addMediaSources(index, mediaSources, actionOnCompletion == null ? null : handler, actionOnCompletion);
+        insertIntoMediaList(index, media);
+        return true;
+    }
+
+    /**
+     * Removes the media in [from, to) with a single edit of the media source.
+     */
+    boolean removeMediaRange(int from, int to, @Nullable Runnable actionOnCompletion) {
+        if (from < 0 || to > mediaList.size() || from > to) {
+            Log.e(TAG, "can't remove range " + from + " to " + to + ". MediaList size: " + mediaList.size());
+            return false;
+        }
+
+        if (isLazy) {
+            removeLazyMedia(from, to, actionOnCompletion);
+            return true;
+        }
+
+        concatenatingMediaSource.removeMediaSourceRange(from, to, actionOnCompletion == null ? null : handler, actionOnCompletion);
+        removeFromMediaList(from, to);
+        return true;
+    }
+
+    /**
+     * Moves the media in [from, to) so that the first of them ends up at newIndex. The media
+     * source only moves single sources, but moves queued back to back are handled with a single
+     * timeline update.
+     */
+    boolean moveMediaRange(int from, int to, int newIndex, @Nullable Runnable actionOnCompletion) {
+        int count = to - from;
+        if (from < 0 || to > mediaList.size() || count < 0 || newIndex < 0 || newIndex > mediaList.size() - count) {
+            Log.e(TAG, "can't move range " + from + " to " + to + " to " + newIndex + ". MediaList size: " + mediaList.size());
+            return false;
+        }
+
+        List<T> moved = new ArrayList<>(mediaList.subList(from, to));
+        mediaList.subList(from, to).clear();
+        mediaList.addAll(newIndex, moved);
+        keyIndex.onMoved(from, newIndex);
+        changeLog.recordMove(from, count, newIndex);
+        shuffleOrder = shuffleOrder.cloneAndMove(from, to, newIndex);
+
+        if (isLazy) {
+            if (currentIndex >= 0) {
+                currentIndex = movedIndex(currentIndex, from, to, newIndex);
+            }
+            refreshWindow(actionOnCompletion);
+            return true;
+        }
+
+        if (newIndex < from) {
+            for (int i = 0; i < count; i++) {
+                concatenatingMediaSource.moveMediaSource(from + i, newIndex + i);
+            }
+        } else if (newIndex > from) {
+            for (int i = 0; i < count; i++) {
+                concatenatingMediaSource.moveMediaSource(from, newIndex + count - 1);
+            }
+        }
+        if (newIndex != from && count > 0) {
+            // the media source shuffles each moved source anew, the moved media keep their turn
+            concatenatingMediaSource.setShuffleOrder(shuffleOrder);
+        }
+        if (actionOnCompletion != null) {
+            // an empty edit, it completes after the moves queued before it
+            concatenatingMediaSource.removeMediaSourceRange(0, 0, handler, actionOnCompletion);
+        }
+        return true;
+    }
+
+    private void insertIntoMediaList(int index, @NonNull List<T> media) {
+        mediaList.addAll(index, media);
+        keyIndex.onInserted(index, media);
+        if (searchIndex != null) {
+            searchIndex.onInserted(media);
+        }
+        changeLog.recordInsert(index, media);
+        if (!media.isEmpty()) {
+            shuffleOrder = shuffleOrder.cloneAndInsert(index, media.size());
+        }
+    }
+
+    private void removeFromMediaList(int from, int to) {
+        List<T> range = mediaList.subList(from, to);
+        ArrayList<T> removed = new ArrayList<>(range);
+        range.clear();
+        keyIndex.onRemoved(from, removed);
+        if (searchIndex != null) {
+            searchIndex.onRemoved(removed);
+        }
+        changeLog.recordRemove(from, to - from);
+        shuffleOrder = shuffleOrder.cloneAndRemove(from, to);
+    }
+
+    private static int movedIndex(int index, int from, int to, int newIndex) {
+        if (index >= from && index < to) {
+            return newIndex + index - from;
+        }
+        int remainingIndex = index < from ? index : index - (to - from);
+        return remainingIndex >= newIndex ? remainingIndex + (to - from) : remainingIndex;
+    }
+
+    private void insertLazyMedia(int index, @NonNull List<T> media, Runnable actionOnCompletion) {
+        int count = media.size();
+        insertIntoMediaList(index, media);
+        if (currentIndex < 0) {
+            currentIndex = mediaList.isEmpty() ? -1 : 0;
+        } else if (index <= currentIndex) {
+            currentIndex += count;
+        }
+        refreshWindow(actionOnCompletion);
+    }
+
+    private void removeLazyMedia(int from, int to, Runnable actionOnCompletion) {
+        int count = to - from;
+        removeFromMediaList(from, to);
+        // the player moves on to the window following the removed ones
+        if (currentIndex >= to) {
+            currentIndex -= count;
+        } else if (currentIndex >= from) {
+            currentIndex = from;
+        }
+        if (currentIndex >= mediaList.size()) {
+            currentIndex = mediaList.size() - 1;
+        }
+        refreshWindow(actionOnCompletion);
+    }
+
+    /**
+     * Brings the materialized window of a lazy playlist in line with the media around the
+     * current index. Sources which stay in the window are kept, so the current media and the
+     * media buffered after it keep playing.
+     */
+    private void refreshWindow(Runnable actionOnCompletion) {
+        refreshWindow(actionOnCompletion, 0);
+    }
+
+    /**
+     * @param positionMs position to start at if the player has to start over at the new window
+     */
+    private void refreshWindow(final Runnable actionOnCompletion, final long positionMs) {
+        ArrayList<T> desired = new ArrayList<>(LAZY_WINDOW_BEHIND + LAZY_WINDOW_AHEAD + 1);
+        int pivot = 0;
+        int size = mediaList.size();
+        if (currentIndex >= 0 && size > 0) {
+            int position = positionOf(currentIndex);
+            boolean wraps = simpleExoPlayer.getRepeatMode() == Player.REPEAT_MODE_ALL
+                    && size > LAZY_WINDOW_BEHIND + LAZY_WINDOW_AHEAD + 1;
+            int from = wraps ? position - LAZY_WINDOW_BEHIND : Math.max(0, position - LAZY_WINDOW_BEHIND);
+            int to = wraps ? position + LAZY_WINDOW_AHEAD : Math.min(size - 1, position + LAZY_WINDOW_AHEAD);
+            for (int p = from; p <= to; p++) {
+                desired.add(mediaList.get(indexAt((p % size + size) % size)));
+            }
+            pivot = position - from;
+        }
+
+        int windowIndex = desired.isEmpty() ? -1 : windowMedia.indexOf(desired.get(pivot));
+        Runnable action = actionOnCompletion;
+        if (windowIndex < 0) {
+            // the current media isn't materialized, the player has to start over at the new window
+            concatenatingMediaSource.removeMediaSourceRange(0, windowMedia.size());
+            concatenatingMediaSource.addMediaSources(createMediaSources(desired, 0, desired.size()));
+            final int seekWindowIndex = pivot;
+            final boolean shouldSeek = !desired.isEmpty();
+            action = new Runnable() {
+                @Override
+                public void run() {
+                    if (shouldSeek) {
+                        simpleExoPlayer.seekTo(seekWindowIndex, positionMs);
+                    }
+                    if (actionOnCompletion != null) {
+                        actionOnCompletion.run();
+                    }
+                }
+            };
+        } else {
+            int after = 0;
+            while (windowIndex + 1 + after < windowMedia.size() && pivot + 1 + after < desired.size()
+                    && windowMedia.get(windowIndex + 1 + after) == desired.get(pivot + 1 + after)) {
+                after++;
+            }
+            int before = 0;
+            while (windowIndex - 1 - before >= 0 && pivot - 1 - before >= 0
+                    && windowMedia.get(windowIndex - 1 - before) == desired.get(pivot - 1 - before)) {
+                before++;
+            }
+
+            int keptEnd = windowIndex + 1 + after;
+            if (keptEnd < windowMedia.size()) {
+                concatenatingMediaSource.removeMediaSourceRange(keptEnd, windowMedia.size());
+            }
+            if (pivot + 1 + after < desired.size()) {
+                concatenatingMediaSource.addMediaSources(keptEnd, createMediaSources(desired, pivot + 1 + after, desired.size()));
+            }
+            if (windowIndex - before > 0) {
+                concatenatingMediaSource.removeMediaSourceRange(0, windowIndex - before);
+            }
+            if (pivot - before > 0) {
+                concatenatingMediaSource.addMediaSources(0, createMediaSources(desired, 0, pivot - before));
+            }
+        }
+
+        windowMedia.clear();
+        windowMedia.addAll(desired);
+        if (action != null) {
+            // an empty edit, it completes after every edit queued before it
+            concatenatingMediaSource.removeMediaSourceRange(0, 0, handler, action);
+        }
+    }
+
+    private ArrayList<MediaSource> createMediaSources(List<T> media, int from, int to) {
+        ArrayList<MediaSource> mediaSources = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            Uri uri = Uri.parse(media.get(i).getUrl());
+            // the tag maps a window of the player's timeline back to its media
+            // a factory's tag is fixed once it created a source, so tagged sources need their own
+            mediaSources.add(createMediaSourceFactory().setTag(media.get(i)).createMediaSource(uri));
+        }
+        return mediaSources;
+    }
+
+    /**
+     * @return a source of the media on its own, reading through the same cache as the playlist
+     */
+    MediaSource createMediaSource(@NonNull T media) {
+        return mediaSourceFactory.createMediaSource(Uri.parse(media.getUrl()));
+    }
+
+    // overridden by tests to count the factories
+    ProgressiveMediaSource.Factory createMediaSourceFactory() {
+        return new ProgressiveMediaSource.Factory(cacheDataSourceFactory, extractorsFactory)
+                .setContinueLoadingCheckIntervalBytes(mediaSourceSettings.continueLoadingCheckIntervalBytes);
+    }
+
+    private int indexOfMedia(Object media) {
+        if (media instanceof Media) {
+            int index = keyIndex.indexOf(((Media) media).getKey());
+            if (index >= 0 && mediaList.get(index) == media) {
+                return index;
+            }
+        }
+        // the media is queued more than once or isn't queued anymore
+        for (int i = 0; i < mediaList.size(); i++) {
+            if (mediaList.get(i) == media) {
+                return i;
+            }
+        }
+        return C.INDEX_UNSET;
+    }
+
+    private int positionOf(int index) {
+        return simpleExoPlayer.getShuffleModeEnabled() ? shuffleOrder.positionOf(index) : index;
+    }
+
+    private int indexAt(int position) {
+        return simpleExoPlayer.getShuffleModeEnabled() ? shuffleOrder.indexAt(position) : position;
+    }
+
     void clear() {
         mediaList.clear();
+        keyIndex.clear();
+        searchIndex = null;
         concatenatingMediaSource.clear();
+        windowMedia.clear();
+        shuffleOrder = shuffleOrder.cloneAndClear();
+        currentIndex = -1;
+        changeLog.reset();
     }
 
     JSONObject toJson() {
@@ -185,41 +824,92 @@ class Playlist<T extends Media> {
         return null;
     }
 
-    static String playlistNameFromJson(JSONObject jsonObject) {
+    /**
+     * Parses the playlist json of toJson token by token, so only the song being read is held
+     * besides the parsed songs. Malformed songs are skipped.
+     *
+     * @return the parsed playlist, its name is null if the json has none
+     */
+    static PlaylistCodec.DecodedPlaylist playlistFromJson(@NonNull Reader jsonReader) throws IOException {
+        String playlistName = null;
+        ArrayList<Song> songs = new ArrayList<>();
+
+        JsonReader reader = new JsonReader(jsonReader);
         try {
-            return jsonObject.get(PLAYLIST_NAME).toString();
-        } catch (JSONException e) {
-            e.printStackTrace();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals(PLAYLIST_NAME) && reader.peek() == JsonToken.STRING) {
+                    playlistName = reader.nextString();
+                } else if (name.equals(MEDIA_PLAYLIST) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        Song song = songFromJson(reader);
+                        if (song != null) {
+                            songs.add(song);
+                        } else {
+                            Log.w(TAG, "Skipping malformed song at " + songs.size());
+                        }
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } finally {
+            reader.close();
         }
 
-        return null;
+        return new PlaylistCodec.DecodedPlaylist(playlistName, songs);
     }
 
-    static ArrayList<Song> songsFromJson(JSONObject jsonObject) {
-        try {
-            JSONArray jsonArray = jsonObject.getJSONArray(MEDIA_PLAYLIST);
-
-            ArrayList<Song> songs = new ArrayList<>();
-            for (int i = 0; i < jsonArray.length(); i++) {
-                JSONObject json = jsonArray.getJSONObject(i);
-                Map<String, String> map = new HashMap<>();
-
-                Iterator<String> keys = json.keys();
-                while (keys.hasNext()) {
-                    String key = keys.next();
-                    String value = (String) json.get(key);
-                    map.put(key, value);
-                }
+    private static Song songFromJson(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
 
-                Song song = Song.fromMap(map);
-                songs.add(song);
+        String key = null;
+        String title = null;
+        String artists = null;
+        String album = null;
+        String albumArtUrl = null;
+        String url = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() != JsonToken.STRING) {
+                reader.skipValue();
+                continue;
             }
 
-            return songs;
-        } catch (JSONException e) {
-            e.printStackTrace();
+            switch (name) {
+                case KEY_TAG:
+                    key = reader.nextString();
+                    break;
+                case TITLE_TAG:
+                    title = reader.nextString();
+                    break;
+                case SONG_ARTISTS_TAG:
+                    artists = reader.nextString();
+                    break;
+                case SONG_ALBUM_TAG:
+                    album = reader.nextString();
+                    break;
+                case ALBUM_ART_URL_TAG:
+                    albumArtUrl = reader.nextString();
+                    break;
+                case URL_TAG:
+                    url = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
         }
+        reader.endObject();
 
-        return new ArrayList<>();
+        return Song.create(key, title, artists, album, albumArtUrl, url);
     }
 }
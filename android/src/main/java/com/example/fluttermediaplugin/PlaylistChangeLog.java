@@ -0,0 +1,112 @@
+package com.example.fluttermediaplugin;
+
+import androidx.annotation.NonNull;
+
+import com.example.fluttermediaplugin.Media.Media;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Revisioned insert, remove and move ranges of a playlist. Every change moves the playlist to a
+ * new revision, which keeps increasing across playlists so that dart can tell a stale copy from
+ * a current one. Each delta carries the revision it applies to and the one it results in. Only
+ * the latest deltas are kept; a client behind them needs a full snapshot.
+ */
+final class PlaylistChangeLog {
+    private static final int MAX_DELTAS = 256;
+
+    static final String OP_TAG = "op";
+    static final String OP_INSERT = "insert";
+    static final String OP_REMOVE = "remove";
+    static final String OP_MOVE = "move";
+
+    // shared by all playlists, only used from the main thread
+    private static long lastRevision = 0;
+
+    private long revision;
+    private final ArrayDeque<Map<String, Object>> deltas = new ArrayDeque<>();
+
+    PlaylistChangeLog() {
+        revision = ++lastRevision;
+    }
+
+    long getRevision() {
+        return revision;
+    }
+
+    /**
+     * Starts over from a new snapshot, older deltas can't be applied to it.
+     */
+    void reset() {
+        revision = ++lastRevision;
+        deltas.clear();
+    }
+
+    void recordInsert(int index, @NonNull List<? extends Media> media) {
+        ArrayList<Map<String, Object>> mediaMaps = new ArrayList<>(media.size());
+        for (Media item : media) {
+            mediaMaps.add(item.toMap());
+        }
+
+        Map<String, Object> delta = newDelta(OP_INSERT);
+        delta.put("index", index);
+        delta.put("media", mediaMaps);
+    }
+
+    void recordRemove(int index, int count) {
+        Map<String, Object> delta = newDelta(OP_REMOVE);
+        delta.put("index", index);
+        delta.put("count", count);
+    }
+
+    void recordMove(int from, int count, int to) {
+        Map<String, Object> delta = newDelta(OP_MOVE);
+        delta.put("from", from);
+        delta.put("count", count);
+        delta.put("to", to);
+    }
+
+    Map<String, Object> getLastDelta() {
+        return deltas.peekLast();
+    }
+
+    /**
+     * @return the deltas after the given revision in order, or null if they are no longer kept
+     */
+    ArrayList<Map<String, Object>> deltasSince(long sinceRevision) {
+        ArrayList<Map<String, Object>> result = new ArrayList<>();
+        if (sinceRevision == revision) {
+            return result;
+        }
+
+        boolean isFound = false;
+        for (Map<String, Object> delta : deltas) {
+            if (!isFound && (Long) delta.get("baseRevision") == sinceRevision) {
+                isFound = true;
+            }
+            if (isFound) {
+                result.add(delta);
+            }
+        }
+        return isFound ? result : null;
+    }
+
+    private Map<String, Object> newDelta(String op) {
+        long baseRevision = revision;
+        revision = ++lastRevision;
+
+        Map<String, Object> delta = new HashMap<>();
+        delta.put(OP_TAG, op);
+        delta.put("baseRevision", baseRevision);
+        delta.put("revision", revision);
+        deltas.addLast(delta);
+        if (deltas.size() > MAX_DELTAS) {
+            deltas.removeFirst();
+        }
+        return delta;
+    }
+}
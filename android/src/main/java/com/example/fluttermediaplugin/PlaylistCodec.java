@@ -0,0 +1,152 @@
+package com.example.fluttermediaplugin;
+
+import androidx.annotation.NonNull;
+
+import com.example.fluttermediaplugin.Media.Song;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Compact binary layout of a song playlist, shared with lib/playlist_codec.dart.
+ * <p>
+ * version, string count, strings (utf-8 length + bytes), playlist name ref, song count and
+ * per song the refs of key, title, artists, album, art url and url. All integers are unsigned
+ * varints and every ref is an index into the string table, so an artist or album repeated over
+ * the whole playlist is stored once.
+ */
+final class PlaylistCodec {
+    private static final int VERSION = 1;
+    private static final int SONG_FIELD_COUNT = 6;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    static final class DecodedPlaylist {
+        final String playlistName;
+        final ArrayList<Song> songs;
+
+        DecodedPlaylist(String playlistName, ArrayList<Song> songs) {
+            this.playlistName = playlistName;
+            this.songs = songs;
+        }
+    }
+
+    private PlaylistCodec() {
+    }
+
+    static byte[] encode(@NonNull String playlistName, @NonNull List<Song> songs) {
+        HashMap<String, Integer> stringRefs = new HashMap<>();
+        ArrayList<String> strings = new ArrayList<>();
+        int[] refs = new int[songs.size() * SONG_FIELD_COUNT];
+
+        int nameRef = ref(playlistName, stringRefs, strings);
+        for (int i = 0; i < songs.size(); i++) {
+            Song song = songs.get(i);
+            int offset = i * SONG_FIELD_COUNT;
+            refs[offset] = ref(song.getKey(), stringRefs, strings);
+            refs[offset + 1] = ref(song.getRawTitle(), stringRefs, strings);
+            refs[offset + 2] = ref(song.getRawArtist(), stringRefs, strings);
+            refs[offset + 3] = ref(song.getRawAlbum(), stringRefs, strings);
+            refs[offset + 4] = ref(song.getAlbumArtUri(), stringRefs, strings);
+            refs[offset + 5] = ref(song.getUrl(), stringRefs, strings);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(refs.length * 2 + strings.size() * 24);
+        writeVarInt(out, VERSION);
+        writeVarInt(out, strings.size());
+        for (String string : strings) {
+            byte[] bytes = string.getBytes(UTF_8);
+            writeVarInt(out, bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+        writeVarInt(out, nameRef);
+        writeVarInt(out, songs.size());
+        for (int ref : refs) {
+            writeVarInt(out, ref);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return null if the bytes are not a playlist of this codec version
+     */
+    static DecodedPlaylist decode(@NonNull byte[] bytes) {
+        try {
+            int[] position = new int[1];
+            if (readVarInt(bytes, position) != VERSION) {
+                return null;
+            }
+
+            // every string takes at least its length byte, every song a byte per field, so
+            // counts beyond that are malformed and are rejected before anything is allocated
+            int stringCount = readVarInt(bytes, position);
+            if (stringCount < 0 || stringCount > bytes.length - position[0]) {
+                return null;
+            }
+            String[] strings = new String[stringCount];
+            for (int i = 0; i < stringCount; i++) {
+                int length = readVarInt(bytes, position);
+                if (length < 0 || length > bytes.length - position[0]) {
+                    return null;
+                }
+                strings[i] = new String(bytes, position[0], length, UTF_8);
+                position[0] += length;
+            }
+
+            String playlistName = strings[readVarInt(bytes, position)];
+            int songCount = readVarInt(bytes, position);
+            if (songCount < 0 || songCount > (bytes.length - position[0]) / SONG_FIELD_COUNT) {
+                return null;
+            }
+            ArrayList<Song> songs = new ArrayList<>(songCount);
+            for (int i = 0; i < songCount; i++) {
+                String key = strings[readVarInt(bytes, position)];
+                String title = strings[readVarInt(bytes, position)];
+                String artists = strings[readVarInt(bytes, position)];
+                String album = strings[readVarInt(bytes, position)];
+                String albumArtUrl = strings[readVarInt(bytes, position)];
+                String url = strings[readVarInt(bytes, position)];
+                songs.add(Song.create(key, title, artists, album, albumArtUrl, url));
+            }
+            return new DecodedPlaylist(playlistName, songs);
+        } catch (IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private static int ref(String string, HashMap<String, Integer> stringRefs, ArrayList<String> strings) {
+        Integer ref = stringRefs.get(string);
+        if (ref == null) {
+            ref = strings.size();
+            stringRefs.put(string, ref);
+            strings.add(string);
+        }
+        return ref;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(byte[] bytes, int[] position) {
+        int value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = bytes[position[0]++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+            if (shift > 28) {
+                throw new IndexOutOfBoundsException("Malformed varint");
+            }
+        }
+    }
+}
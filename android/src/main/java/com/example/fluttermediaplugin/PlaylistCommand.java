@@ -0,0 +1,82 @@
+package com.example.fluttermediaplugin;
+
+import androidx.annotation.NonNull;
+
+import com.example.fluttermediaplugin.Media.Song;
+
+import java.util.Map;
+
+/**
+ * One queue operation of an "AUDIO_TYPE/batch" call. The command map carries the same
+ * fields as the single call with the same name plus a "method" entry.
+ */
+final class PlaylistCommand {
+    static final String ADD_SONG_AT_INDEX = "addSongAtIndex";
+    static final String REMOVE_SONG_FROM_INDEX = "removeSongFromIndex";
+    static final String SKIP_TO_INDEX = "skipToIndex";
+    static final String PLAY_NEXT = "playNext";
+
+    private static final String METHOD_TAG = "method";
+    private static final String INDEX_TAG = "index";
+    private static final String SHOULD_PLAY_TAG = "shouldPlay";
+
+    final String method;
+    final int index;
+    final boolean shouldPlay;
+    final Song song;
+
+    private PlaylistCommand(@NonNull String method, int index, boolean shouldPlay, Song song) {
+        this.method = method;
+        this.index = index;
+        this.shouldPlay = shouldPlay;
+        this.song = song;
+    }
+
+    boolean isStructural() {
+        return !method.equals(SKIP_TO_INDEX);
+    }
+
+    @SuppressWarnings("unchecked")
+    static PlaylistCommand fromMap(Map<String, Object> mapObject) {
+        if (mapObject == null) {
+            return null;
+        }
+
+        Object method = mapObject.get(METHOD_TAG);
+        Object index = mapObject.get(INDEX_TAG);
+        Object shouldPlay = mapObject.get(SHOULD_PLAY_TAG);
+
+        if (!(method instanceof String)) {
+            return null;
+        }
+
+        switch ((String) method) {
+            case ADD_SONG_AT_INDEX:
+            case REMOVE_SONG_FROM_INDEX: {
+                if (!(index instanceof Integer)) {
+                    return null;
+                }
+                Song song = Song.fromMap((Map<String, String>) (Map) mapObject);
+                if (song == null) {
+                    return null;
+                }
+                boolean play = shouldPlay instanceof Integer && (Integer) shouldPlay == 1;
+                return new PlaylistCommand((String) method, (Integer) index, play, song);
+            }
+            case PLAY_NEXT: {
+                Song song = Song.fromMap((Map<String, String>) (Map) mapObject);
+                if (song == null) {
+                    return null;
+                }
+                return new PlaylistCommand((String) method, -1, false, song);
+            }
+            case SKIP_TO_INDEX:
+                if (!(index instanceof Integer)) {
+                    return null;
+                }
+                return new PlaylistCommand((String) method, (Integer) index, true, null);
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.fluttermediaplugin;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.SimpleExoPlayer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.flutter.plugin.common.EventChannel;
+
+/**
+ * Event channel stream of playback position anchors. An anchor is only sent when the position
+ * can't be extrapolated from the previous one (seek, state, speed or track change), dart
+ * interpolates the position in between. While dart listens, the player listener doesn't poll
+ * the playback position.
+ */
+final class PositionAnchorStream implements EventChannel.StreamHandler {
+    // an anchor which predicts the position within this tolerance is not sent again
+    private static final long POSITION_TOLERANCE_MS = 50;
+
+    interface Listener {
+        void onListenChanged(boolean isListening);
+    }
+
+    private EventChannel.EventSink eventSink;
+    private Listener listener;
+
+    private boolean hasAnchor = false;
+    private long lastPosition;
+    private long lastTimestamp;
+    private float lastSpeed;
+    private boolean lastIsPlaying;
+    private int lastWindowIndex;
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    boolean isListening() {
+        return eventSink != null;
+    }
+
+    @Override
+    public void onListen(Object arguments, EventChannel.EventSink events) {
+        eventSink = events;
+        hasAnchor = false;
+        if (listener != null) {
+            listener.onListenChanged(true);
+        }
+    }
+
+    @Override
+    public void onCancel(Object arguments) {
+        eventSink = null;
+        if (listener != null) {
+            listener.onListenChanged(false);
+        }
+    }
+
+    void publish(@NonNull SimpleExoPlayer simpleExoPlayer, int windowIndex) {
+        if (eventSink == null) {
+            return;
+        }
+
+        long position = simpleExoPlayer.getCurrentPosition();
+        long timestamp = System.currentTimeMillis();
+        float speed = simpleExoPlayer.getPlaybackParameters().speed;
+        boolean isPlaying = simpleExoPlayer.getPlayWhenReady() && simpleExoPlayer.getPlaybackState() == Player.STATE_READY;
+
+        if (hasAnchor && isPlaying == lastIsPlaying && speed == lastSpeed && windowIndex == lastWindowIndex) {
+            long expectedPosition = lastIsPlaying
+                    ? lastPosition + (long) ((timestamp - lastTimestamp) * lastSpeed)
+                    : lastPosition;
+            if (Math.abs(expectedPosition - position) <= POSITION_TOLERANCE_MS) {
+                return;
+            }
+        }
+
+        hasAnchor = true;
+        lastPosition = position;
+        lastTimestamp = timestamp;
+        lastSpeed = speed;
+        lastIsPlaying = isPlaying;
+        lastWindowIndex = windowIndex;
+
+        Map<String, Object> anchor = new HashMap<>();
+        anchor.put("position", position);
+        anchor.put("timestamp", timestamp);
+        anchor.put("playbackSpeed", (double) speed);
+        anchor.put("isPlaying", isPlaying);
+        anchor.put("duration", simpleExoPlayer.getDuration());
+        anchor.put("windowIndex", windowIndex);
+        eventSink.success(anchor);
+    }
+}
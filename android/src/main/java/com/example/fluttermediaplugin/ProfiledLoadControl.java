@@ -0,0 +1,107 @@
+package com.example.fluttermediaplugin;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.LoadControl;
+import com.google.android.exoplayer2.Renderer;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
+import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+
+/**
+ * LoadControl of a player whose BufferProfile can change while it plays. A new profile
+ * replaces the DefaultLoadControl this forwards to. The replacement shares the allocator of
+ * the one before and is told about the selected tracks, so buffered media is kept.
+ * <p>
+ * The player calls this from its playback thread, profiles are set from the main thread.
+ */
+final class ProfiledLoadControl implements LoadControl {
+    private final DefaultAllocator allocator = new DefaultAllocator(true, C.DEFAULT_BUFFER_SEGMENT_SIZE);
+    private final BufferProfile initialProfile;
+    private BufferProfile profile;
+    private DefaultLoadControl loadControl;
+
+    // the last track selection, null if nothing is selected
+    private Renderer[] renderers;
+    private TrackGroupArray trackGroups;
+    private TrackSelectionArray trackSelections;
+
+    ProfiledLoadControl(@NonNull BufferProfile profile) {
+        this.initialProfile = profile;
+        this.profile = profile;
+        loadControl = profile.createLoadControl(allocator);
+    }
+
+    synchronized void setProfile(@NonNull BufferProfile profile) {
+        DefaultLoadControl loadControl = profile.createLoadControl(allocator);
+        if (renderers != null) {
+            loadControl.onTracksSelected(renderers, trackGroups, trackSelections);
+        }
+        this.loadControl = loadControl;
+        this.profile = profile;
+    }
+
+    synchronized BufferProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * @return the back buffer of the player, which is read when it's created
+     */
+    int getBackBufferMs() {
+        return initialProfile.backBufferMs;
+    }
+
+    @Override
+    public synchronized void onPrepared() {
+        loadControl.onPrepared();
+    }
+
+    @Override
+    public synchronized void onTracksSelected(Renderer[] renderers, TrackGroupArray trackGroups, TrackSelectionArray trackSelections) {
+        this.renderers = renderers;
+        this.trackGroups = trackGroups;
+        this.trackSelections = trackSelections;
+        loadControl.onTracksSelected(renderers, trackGroups, trackSelections);
+    }
+
+    @Override
+    public synchronized void onStopped() {
+        renderers = null;
+        loadControl.onStopped();
+    }
+
+    @Override
+    public synchronized void onReleased() {
+        renderers = null;
+        loadControl.onReleased();
+    }
+
+    @Override
+    public Allocator getAllocator() {
+        return allocator;
+    }
+
+    @Override
+    public long getBackBufferDurationUs() {
+        return C.msToUs(initialProfile.backBufferMs);
+    }
+
+    @Override
+    public boolean retainBackBufferFromKeyframe() {
+        return true;
+    }
+
+    @Override
+    public synchronized boolean shouldContinueLoading(long bufferedDurationUs, float playbackSpeed) {
+        return loadControl.shouldContinueLoading(bufferedDurationUs, playbackSpeed);
+    }
+
+    @Override
+    public synchronized boolean shouldStartPlayback(long bufferedDurationUs, float playbackSpeed, boolean rebuffering) {
+        return loadControl.shouldStartPlayback(bufferedDurationUs, playbackSpeed, rebuffering);
+    }
+}
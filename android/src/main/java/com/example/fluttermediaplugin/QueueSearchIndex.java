@@ -0,0 +1,141 @@
+package com.example.fluttermediaplugin;
+
+import androidx.annotation.NonNull;
+
+import com.example.fluttermediaplugin.Media.Media;
+import com.example.fluttermediaplugin.Media.Song;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Sorted token index over the title, artists and album of queued media. A query matches the
+ * media with a token starting with each of the query's tokens, so prefix lookups are a range
+ * of the sorted tokens. Matching ignores case and splits on everything but letters and digits.
+ */
+final class QueueSearchIndex {
+    // token -> media with the token and how often each of them is queued
+    private final TreeMap<String, IdentityHashMap<Media, Integer>> mediaByToken = new TreeMap<>();
+
+    void onInserted(@NonNull List<? extends Media> media) {
+        for (Media item : media) {
+            for (String token : tokensOf(searchableText(item))) {
+                IdentityHashMap<Media, Integer> tokenMedia = mediaByToken.get(token);
+                if (tokenMedia == null) {
+                    tokenMedia = new IdentityHashMap<>();
+                    mediaByToken.put(token, tokenMedia);
+                }
+                Integer count = tokenMedia.get(item);
+                tokenMedia.put(item, count == null ? 1 : count + 1);
+            }
+        }
+    }
+
+    void onRemoved(@NonNull List<? extends Media> media) {
+        for (Media item : media) {
+            for (String token : tokensOf(searchableText(item))) {
+                IdentityHashMap<Media, Integer> tokenMedia = mediaByToken.get(token);
+                if (tokenMedia == null) {
+                    continue;
+                }
+                Integer count = tokenMedia.get(item);
+                if (count == null || count <= 1) {
+                    tokenMedia.remove(item);
+                    if (tokenMedia.isEmpty()) {
+                        mediaByToken.remove(token);
+                    }
+                } else {
+                    tokenMedia.put(item, count - 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the media matching every token of the query and how often each of them is
+     * queued, empty if the query has no tokens
+     */
+    IdentityHashMap<Media, Integer> search(@NonNull String query) {
+        List<String> queryTokens = tokensOf(query);
+        IdentityHashMap<Media, Integer> matches = new IdentityHashMap<>();
+        if (queryTokens.isEmpty()) {
+            return matches;
+        }
+
+        // starts from the query token with the fewest media, the other tokens only filter them
+        Collection<IdentityHashMap<Media, Integer>> candidates = null;
+        int candidateCount = Integer.MAX_VALUE;
+        for (String token : queryTokens) {
+            Collection<IdentityHashMap<Media, Integer>> tokenCandidates = mediaByToken.subMap(token, true, token + Character.MAX_VALUE, true).values();
+            int count = 0;
+            for (IdentityHashMap<Media, Integer> tokenMedia : tokenCandidates) {
+                count += tokenMedia.size();
+            }
+            if (count < candidateCount) {
+                candidates = tokenCandidates;
+                candidateCount = count;
+            }
+        }
+
+        for (IdentityHashMap<Media, Integer> tokenMedia : candidates) {
+            for (Map.Entry<Media, Integer> entry : tokenMedia.entrySet()) {
+                if (queryTokens.size() == 1 || matchesAll(entry.getKey(), queryTokens)) {
+                    matches.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static boolean matchesAll(Media media, List<String> queryTokens) {
+        List<String> tokens = tokensOf(searchableText(media));
+        for (String queryToken : queryTokens) {
+            boolean isFound = false;
+            for (String token : tokens) {
+                if (token.startsWith(queryToken)) {
+                    isFound = true;
+                    break;
+                }
+            }
+            if (!isFound) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String searchableText(Media media) {
+        if (media instanceof Song) {
+            Song song = (Song) media;
+            return song.getRawTitle() + ' ' + song.getRawArtist() + ' ' + song.getRawAlbum();
+        }
+        return media.getTitle();
+    }
+
+    /**
+     * @return the distinct lower case tokens of the text
+     */
+    private static List<String> tokensOf(String text) {
+        String lowerCaseText = text.toLowerCase(Locale.ROOT);
+        ArrayList<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= lowerCaseText.length(); i++) {
+            boolean isTokenChar = i < lowerCaseText.length() && Character.isLetterOrDigit(lowerCaseText.charAt(i));
+            if (isTokenChar && start < 0) {
+                start = i;
+            } else if (!isTokenChar && start >= 0) {
+                String token = lowerCaseText.substring(start, i);
+                if (!tokens.contains(token)) {
+                    tokens.add(token);
+                }
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,440 @@
+package com.example.fluttermediaplugin;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.fluttermediaplugin.Media.Song;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+import static com.example.fluttermediaplugin.Utility.MediaIds.ALBUM_ART_URL_TAG;
+import static com.example.fluttermediaplugin.Utility.MediaIds.KEY_TAG;
+import static com.example.fluttermediaplugin.Utility.MediaIds.SONG_ALBUM_TAG;
+import static com.example.fluttermediaplugin.Utility.MediaIds.SONG_ARTISTS_TAG;
+import static com.example.fluttermediaplugin.Utility.MediaIds.TITLE_TAG;
+import static com.example.fluttermediaplugin.Utility.MediaIds.URL_TAG;
+
+/**
+ * Append-only file of the audio queue, so the queue can be restored after process death
+ * without dart sending it again. The file starts with a snapshot record in the PlaylistCodec
+ * format and is followed by the playlist deltas since. Once the journal grows too long the
+ * owner writes a new snapshot, which replaces the file.
+ * <p>
+ * The playback position is kept apart from the journal in a checkpoint file of fixed size,
+ * which is replaced as a whole, so saving it costs the same for every queue. A checkpoint
+ * names the snapshot and the number of deltas it was taken after and is only restored onto
+ * that queue, otherwise the position of the snapshot is.
+ * <p>
+ * Methods are called from the main thread, file access happens in order on a store thread.
+ * A record cut off by process death ends the replay at the record before it.
+ */
+final class QueueStore {
+    private static final String TAG = "QueueStore";
+    private static final int MAX_JOURNAL_RECORDS = 1024;
+
+    private static final int RECORD_SNAPSHOT = 1;
+    private static final int RECORD_INSERT = 2;
+    private static final int RECORD_REMOVE = 3;
+    private static final int RECORD_MOVE = 4;
+    private static final int RECORD_POSITION = 5;
+    private static final int RECORD_SNAPSHOT_ID = 6;
+
+    private static final int CHECKPOINT_MAGIC = 0x51434b31;
+    // magic, snapshot id, deltas, index, position and the CRC32 of them
+    private static final int CHECKPOINT_SIZE = 4 + 8 + 4 + 4 + 8 + 4;
+
+    private static final String[] SONG_TAGS = {
+            KEY_TAG, TITLE_TAG, SONG_ARTISTS_TAG, SONG_ALBUM_TAG, ALBUM_ART_URL_TAG, URL_TAG
+    };
+
+    static final class SavedQueue {
+        final String playlistName;
+        final ArrayList<Song> songs;
+        final int index;
+        final long position;
+
+        private SavedQueue(String playlistName, ArrayList<Song> songs, int index, long position) {
+            this.playlistName = playlistName;
+            this.songs = songs;
+            this.index = index;
+            this.position = position;
+        }
+    }
+
+    private final File file;
+    private final File checkpointFile;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            Thread thread = new Thread(runnable, "flutter_media_queue_store");
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    });
+    private int journalRecords = 0;
+    // the queue the journal holds, checkpoints are taken of
+    private long snapshotId = 0;
+    private int deltaCount = 0;
+
+    // the latest checkpoint not written yet, guarded by itself
+    private final long[] pendingCheckpoint = new long[4];
+    private boolean isCheckpointPending = false;
+
+    QueueStore(@NonNull File file) {
+        this.file = file;
+        this.checkpointFile = new File(file.getPath() + ".position");
+    }
+
+    /**
+     * @return true if the journal is long enough that the next change should be a snapshot
+     */
+    boolean shouldWriteSnapshot() {
+        return journalRecords >= MAX_JOURNAL_RECORDS;
+    }
+
+    /**
+     * @param songs must not be changed afterwards, it is encoded on the store thread
+     */
+    void writeSnapshot(@NonNull final String playlistName, @NonNull final List<Song> songs, final int index, final long position) {
+        journalRecords = 0;
+        snapshotId = newSnapshotId();
+        deltaCount = 0;
+        final long id = snapshotId;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                byte[] playlistBytes = PlaylistCodec.encode(playlistName, songs);
+                File snapshotFile = new File(file.getPath() + ".tmp");
+                try {
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(snapshotFile)));
+                    try {
+                        out.writeByte(RECORD_SNAPSHOT);
+                        out.writeInt(playlistBytes.length);
+                        out.write(playlistBytes);
+                        writePosition(out, index, position);
+                        out.writeByte(RECORD_SNAPSHOT_ID);
+                        out.writeLong(id);
+                    } finally {
+                        out.close();
+                    }
+                    if (!snapshotFile.renameTo(file)) {
+                        Log.e(TAG, "Can't replace queue file");
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Can't write queue snapshot", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param deltas playlist deltas as recorded by PlaylistChangeLog
+     */
+    void appendDeltas(@NonNull final List<Map<String, Object>> deltas) {
+        journalRecords += deltas.size();
+        deltaCount += deltas.size();
+        append(new RecordWriter() {
+            @Override
+            public void write(DataOutputStream out) throws IOException {
+                for (Map<String, Object> delta : deltas) {
+                    writeDelta(out, delta);
+                }
+            }
+        });
+    }
+
+    /**
+     * Saves the position in the queue as it is after the snapshot and deltas written so far.
+     * Checkpoints taken while the store thread is busy are batched, only the latest of them
+     * is written.
+     */
+    void writeCheckpoint(int index, long position) {
+        synchronized (pendingCheckpoint) {
+            pendingCheckpoint[0] = snapshotId;
+            pendingCheckpoint[1] = deltaCount;
+            pendingCheckpoint[2] = index;
+            pendingCheckpoint[3] = position;
+            if (isCheckpointPending) {
+                return;
+            }
+            isCheckpointPending = true;
+        }
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long[] checkpoint;
+                synchronized (pendingCheckpoint) {
+                    checkpoint = pendingCheckpoint.clone();
+                    isCheckpointPending = false;
+                }
+                if (checkpoint[0] != 0) {
+                    writeCheckpointFile(checkpoint[0], (int) checkpoint[1], (int) checkpoint[2], checkpoint[3]);
+                }
+            }
+        });
+    }
+
+    void clear() {
+        journalRecords = 0;
+        snapshotId = 0;
+        deltaCount = 0;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (file.exists() && !file.delete()) {
+                    Log.e(TAG, "Can't delete queue file");
+                }
+                if (checkpointFile.exists() && !checkpointFile.delete()) {
+                    Log.e(TAG, "Can't delete position checkpoint");
+                }
+            }
+        });
+    }
+
+    /**
+     * Reads the queue on the store thread, after every write queued before. Must be called
+     * from a background thread.
+     *
+     * @return null if no queue is saved or the file is unreadable
+     */
+    SavedQueue load() throws Exception {
+        return executor.submit(new Callable<SavedQueue>() {
+            @Override
+            public SavedQueue call() {
+                return read();
+            }
+        }).get();
+    }
+
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private void append(final RecordWriter recordWriter) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!file.exists()) {
+                    // a journal without its snapshot can't be replayed
+                    return;
+                }
+                try {
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+                    try {
+                        recordWriter.write(out);
+                    } finally {
+                        out.close();
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Can't append to queue file", e);
+                }
+            }
+        });
+    }
+
+    private static long newSnapshotId() {
+        long id = new Random().nextLong();
+        return id != 0 ? id : 1;
+    }
+
+    private void writeCheckpointFile(long snapshotId, int deltaCount, int index, long position) {
+        ByteBuffer record = ByteBuffer.allocate(CHECKPOINT_SIZE);
+        record.putInt(CHECKPOINT_MAGIC).putLong(snapshotId).putInt(deltaCount).putInt(index).putLong(position);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, CHECKPOINT_SIZE - 4);
+        record.putInt((int) crc.getValue());
+
+        File tmpFile = new File(checkpointFile.getPath() + ".tmp");
+        try {
+            FileOutputStream out = new FileOutputStream(tmpFile);
+            try {
+                out.write(record.array());
+            } finally {
+                out.close();
+            }
+            if (!tmpFile.renameTo(checkpointFile)) {
+                Log.e(TAG, "Can't replace position checkpoint");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Can't write position checkpoint", e);
+        }
+    }
+
+    /**
+     * @return snapshot id, deltas, index and position of the checkpoint, null if there is
+     * none or it is damaged
+     */
+    private long[] readCheckpointFile() {
+        if (checkpointFile.length() != CHECKPOINT_SIZE) {
+            return null;
+        }
+
+        byte[] bytes = new byte[CHECKPOINT_SIZE];
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(checkpointFile));
+            try {
+                in.readFully(bytes);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Can't read position checkpoint", e);
+            return null;
+        }
+
+        ByteBuffer record = ByteBuffer.wrap(bytes);
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, CHECKPOINT_SIZE - 4);
+        if (record.getInt() != CHECKPOINT_MAGIC || record.getInt(CHECKPOINT_SIZE - 4) != (int) crc.getValue()) {
+            return null;
+        }
+        return new long[]{record.getLong(), record.getInt(), record.getInt(), record.getLong()};
+    }
+
+    private static void writePosition(DataOutputStream out, int index, long position) throws IOException {
+        out.writeByte(RECORD_POSITION);
+        out.writeInt(index);
+        out.writeLong(position);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writeDelta(DataOutputStream out, Map<String, Object> delta) throws IOException {
+        Object op = delta.get(PlaylistChangeLog.OP_TAG);
+        if (PlaylistChangeLog.OP_INSERT.equals(op)) {
+            List<Map<String, Object>> media = (List<Map<String, Object>>) delta.get("media");
+            out.writeByte(RECORD_INSERT);
+            out.writeInt((Integer) delta.get("index"));
+            out.writeInt(media.size());
+            for (Map<String, Object> songMap : media) {
+                for (String tag : SONG_TAGS) {
+                    out.writeUTF((String) songMap.get(tag));
+                }
+            }
+        } else if (PlaylistChangeLog.OP_REMOVE.equals(op)) {
+            out.writeByte(RECORD_REMOVE);
+            out.writeInt((Integer) delta.get("index"));
+            out.writeInt((Integer) delta.get("count"));
+        } else if (PlaylistChangeLog.OP_MOVE.equals(op)) {
+            out.writeByte(RECORD_MOVE);
+            out.writeInt((Integer) delta.get("from"));
+            out.writeInt((Integer) delta.get("count"));
+            out.writeInt((Integer) delta.get("to"));
+        }
+    }
+
+    private SavedQueue read() {
+        if (!file.exists()) {
+            return null;
+        }
+
+        String playlistName = null;
+        ArrayList<Song> songs = null;
+        int index = 0;
+        long position = 0;
+        long readSnapshotId = 0;
+        int readDeltaCount = 0;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                while (true) {
+                    int record = in.read();
+                    if (record < 0) {
+                        break;
+                    }
+
+                    if (record == RECORD_SNAPSHOT) {
+                        byte[] playlistBytes = new byte[in.readInt()];
+                        in.readFully(playlistBytes);
+                        PlaylistCodec.DecodedPlaylist decodedPlaylist = PlaylistCodec.decode(playlistBytes);
+                        if (decodedPlaylist == null) {
+                            return null;
+                        }
+                        playlistName = decodedPlaylist.playlistName;
+                        songs = decodedPlaylist.songs;
+                    } else if (songs == null) {
+                        return null;
+                    } else if (record == RECORD_INSERT) {
+                        int insertIndex = in.readInt();
+                        int count = in.readInt();
+                        ArrayList<Song> inserted = new ArrayList<>(count);
+                        for (int i = 0; i < count; i++) {
+                            Map<String, String> songMap = new HashMap<>();
+                            for (String tag : SONG_TAGS) {
+                                songMap.put(tag, in.readUTF());
+                            }
+                            inserted.add(Song.fromMap(songMap));
+                        }
+                        songs.addAll(insertIndex, inserted);
+                        readDeltaCount++;
+                    } else if (record == RECORD_REMOVE) {
+                        int removeIndex = in.readInt();
+                        int count = in.readInt();
+                        songs.subList(removeIndex, removeIndex + count).clear();
+                        readDeltaCount++;
+                    } else if (record == RECORD_MOVE) {
+                        int from = in.readInt();
+                        int count = in.readInt();
+                        int to = in.readInt();
+                        List<Song> range = songs.subList(from, from + count);
+                        ArrayList<Song> moved = new ArrayList<>(range);
+                        range.clear();
+                        songs.addAll(to, moved);
+                        readDeltaCount++;
+                    } else if (record == RECORD_POSITION) {
+                        int positionIndex = in.readInt();
+                        long positionMs = in.readLong();
+                        index = positionIndex;
+                        position = positionMs;
+                    } else if (record == RECORD_SNAPSHOT_ID) {
+                        readSnapshotId = in.readLong();
+                    } else {
+                        Log.e(TAG, "Unknown queue record " + record);
+                        break;
+                    }
+                }
+            } finally {
+                in.close();
+            }
+        } catch (EOFException e) {
+            Log.w(TAG, "Queue file ends with a partial record");
+        } catch (IOException | IndexOutOfBoundsException e) {
+            Log.e(TAG, "Can't read queue file", e);
+            return null;
+        }
+
+        if (songs == null || songs.isEmpty()) {
+            return null;
+        }
+        long[] checkpoint = readSnapshotId != 0 ? readCheckpointFile() : null;
+        if (checkpoint != null && checkpoint[0] == readSnapshotId && checkpoint[1] == readDeltaCount) {
+            index = (int) checkpoint[2];
+            position = checkpoint[3];
+        }
+        if (index < 0 || index >= songs.size()) {
+            index = 0;
+            position = 0;
+        }
+        return new SavedQueue(playlistName, songs, index, position);
+    }
+}
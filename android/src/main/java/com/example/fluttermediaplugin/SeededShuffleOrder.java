@@ -0,0 +1,171 @@
+package com.example.fluttermediaplugin;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.source.ShuffleOrder;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Shuffle order which is a pure function of its seed and the edits applied to it, so the copy
+ * a playlist keeps and the copy the media source clones for itself stay the same. Inserted
+ * indices go to random positions and removals keep the order of the rest, like ExoPlayer's
+ * DefaultShuffleOrder. Next and previous are looked up in constant time.
+ * <p>
+ * A cleared order remembers the order before it. Refilled with the same number of indices it
+ * is restored, so the order survives the media source being released and prepared again.
+ */
+final class SeededShuffleOrder implements ShuffleOrder {
+    private final int[] shuffled;
+    private final int[] indexInShuffled;
+    // seed of the next insertion
+    private final long seed;
+    @Nullable
+    private final SeededShuffleOrder clearedOrder;
+
+    SeededShuffleOrder(long seed) {
+        this(new int[0], seed, null);
+    }
+
+    private SeededShuffleOrder(int[] shuffled, long seed, @Nullable SeededShuffleOrder clearedOrder) {
+        this.shuffled = shuffled;
+        this.seed = seed;
+        this.clearedOrder = clearedOrder;
+        indexInShuffled = new int[shuffled.length];
+        for (int i = 0; i < shuffled.length; i++) {
+            indexInShuffled[shuffled[i]] = i;
+        }
+    }
+
+    /**
+     * @return the index at a position of the play order
+     */
+    int indexAt(int position) {
+        return shuffled[position];
+    }
+
+    /**
+     * @return the position of an index in the play order
+     */
+    int positionOf(int index) {
+        return indexInShuffled[index];
+    }
+
+    /**
+     * @return the indices in play order
+     */
+    int[] toArray() {
+        return Arrays.copyOf(shuffled, shuffled.length);
+    }
+
+    /**
+     * Moves the indices in [from, to) to start at newIndex. Unlike a removal followed by an
+     * insertion, the moved indices keep their positions in the play order.
+     */
+    SeededShuffleOrder cloneAndMove(int from, int to, int newIndex) {
+        int count = to - from;
+        int[] newShuffled = new int[shuffled.length];
+        for (int i = 0; i < shuffled.length; i++) {
+            int index = shuffled[i];
+            if (index >= from && index < to) {
+                newShuffled[i] = newIndex + index - from;
+            } else {
+                int remainingIndex = index < from ? index : index - count;
+                newShuffled[i] = remainingIndex >= newIndex ? remainingIndex + count : remainingIndex;
+            }
+        }
+        return new SeededShuffleOrder(newShuffled, seed, null);
+    }
+
+    @Override
+    public int getLength() {
+        return shuffled.length;
+    }
+
+    @Override
+    public int getNextIndex(int index) {
+        int position = indexInShuffled[index] + 1;
+        return position < shuffled.length ? shuffled[position] : C.INDEX_UNSET;
+    }
+
+    @Override
+    public int getPreviousIndex(int index) {
+        int position = indexInShuffled[index] - 1;
+        return position >= 0 ? shuffled[position] : C.INDEX_UNSET;
+    }
+
+    @Override
+    public int getLastIndex() {
+        return shuffled.length > 0 ? shuffled[shuffled.length - 1] : C.INDEX_UNSET;
+    }
+
+    @Override
+    public int getFirstIndex() {
+        return shuffled.length > 0 ? shuffled[0] : C.INDEX_UNSET;
+    }
+
+    @NonNull
+    @Override
+    public SeededShuffleOrder cloneAndInsert(int insertionIndex, int insertionCount) {
+        if (insertionCount == 0) {
+            return this;
+        }
+        if (shuffled.length == 0 && clearedOrder != null && insertionIndex == 0
+                && insertionCount == clearedOrder.getLength()) {
+            return clearedOrder;
+        }
+
+        Random random = new Random(seed);
+        int[] insertionPoints = new int[insertionCount];
+        int[] insertionValues = new int[insertionCount];
+        for (int i = 0; i < insertionCount; i++) {
+            insertionPoints[i] = random.nextInt(shuffled.length + 1);
+            int swap = random.nextInt(i + 1);
+            insertionValues[i] = insertionValues[swap];
+            insertionValues[swap] = i + insertionIndex;
+        }
+        Arrays.sort(insertionPoints);
+
+        int[] newShuffled = new int[shuffled.length + insertionCount];
+        int indexInOld = 0;
+        int indexInInsertion = 0;
+        for (int i = 0; i < newShuffled.length; i++) {
+            if (indexInInsertion < insertionCount && indexInOld == insertionPoints[indexInInsertion]) {
+                newShuffled[i] = insertionValues[indexInInsertion++];
+            } else {
+                int index = shuffled[indexInOld++];
+                newShuffled[i] = index >= insertionIndex ? index + insertionCount : index;
+            }
+        }
+        return new SeededShuffleOrder(newShuffled, random.nextLong(), null);
+    }
+
+    @NonNull
+    @Override
+    public SeededShuffleOrder cloneAndRemove(int indexFrom, int indexToExclusive) {
+        if (indexFrom == 0 && indexToExclusive == shuffled.length) {
+            return cloneAndClear();
+        }
+
+        int count = indexToExclusive - indexFrom;
+        int[] newShuffled = new int[shuffled.length - count];
+        int position = 0;
+        for (int index : shuffled) {
+            if (index < indexFrom) {
+                newShuffled[position++] = index;
+            } else if (index >= indexToExclusive) {
+                newShuffled[position++] = index - count;
+            }
+        }
+        return new SeededShuffleOrder(newShuffled, seed, null);
+    }
+
+    @NonNull
+    @Override
+    public SeededShuffleOrder cloneAndClear() {
+        return new SeededShuffleOrder(new int[0], seed, shuffled.length > 0 ? this : clearedOrder);
+    }
+}
@@ -0,0 +1,301 @@
+package com.example.fluttermediaplugin;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.fluttermediaplugin.Media.Media;
+import com.google.android.exoplayer2.ExoPlaybackException;
+import com.google.android.exoplayer2.PlaybackParameters;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.SimpleExoPlayer;
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures how long a skip takes from the command to audible output, through the position
+ * discontinuity, buffering and ready state of the player. The first audio is when the
+ * position, which follows the audio output, moves past where playback became ready.
+ * <p>
+ * The times since the command are counted in histograms for the session, separately for
+ * skips to media whose start was cached and skips which had to load it from the network.
+ * <p>
+ * Methods are called from the main thread.
+ */
+final class SkipLatencyTracker implements Player.EventListener {
+    // upper bounds of the histogram buckets, the last bucket has none
+    private static final long[] BUCKET_BOUNDS_MS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000};
+    private static final String[] STAGES = {"discontinuity", "buffering", "ready", "firstAudio"};
+    private static final int STAGE_DISCONTINUITY = 0;
+    private static final int STAGE_BUFFERING = 1;
+    private static final int STAGE_READY = 2;
+    private static final int STAGE_FIRST_AUDIO = 3;
+    // bytes at the start of a media which make a skip to it a cache hit
+    private static final long CACHE_PROBE_BYTES = 64 * 1024;
+    private static final long FIRST_AUDIO_POLL_INTERVAL_MS = 5;
+    private static final long TIMEOUT_MS = 10000;
+
+    interface Callback {
+        @Nullable
+        Media getCurrentMedia();
+    }
+
+    private static final class Histogram {
+        final int[] counts = new int[BUCKET_BOUNDS_MS.length + 1];
+        int count;
+        long sumMs;
+        long maxMs;
+
+        void add(long ms) {
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS_MS.length && ms > BUCKET_BOUNDS_MS[bucket]) {
+                bucket++;
+            }
+            counts[bucket]++;
+            count++;
+            sumMs += ms;
+            maxMs = Math.max(maxMs, ms);
+        }
+
+        Map<String, Object> toMap() {
+            List<Integer> countList = new ArrayList<>(counts.length);
+            for (int count : counts) {
+                countList.add(count);
+            }
+            Map<String, Object> map = new HashMap<>();
+            map.put("counts", countList);
+            map.put("count", count);
+            map.put("sumMs", sumMs);
+            map.put("maxMs", maxMs);
+            return map;
+        }
+    }
+
+    private final SimpleExoPlayer player;
+    private final Cache cache;
+    private final Callback callback;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable pollFirstAudio = new Runnable() {
+        @Override
+        public void run() {
+            onPollFirstAudio();
+        }
+    };
+    private final Runnable timeout = new Runnable() {
+        @Override
+        public void run() {
+            timeouts++;
+            finish();
+        }
+    };
+
+    private Histogram[] cacheHistograms = newHistograms();
+    private Histogram[] networkHistograms = newHistograms();
+    private int superseded = 0;
+    private int timeouts = 0;
+
+    // the skip being measured, commandMs is 0 if there is none
+    private long commandMs = 0;
+    @Nullable
+    private Boolean isCacheHit;
+    private final long[] stageMs = new long[STAGES.length];
+    private long readyPosition;
+
+    SkipLatencyTracker(@NonNull SimpleExoPlayer player, @NonNull Cache cache, @NonNull Callback callback) {
+        this.player = player;
+        this.cache = cache;
+        this.callback = callback;
+        player.addListener(this);
+    }
+
+    /**
+     * Starts measuring a skip, called before the player is told to skip.
+     */
+    void onCommand() {
+        if (commandMs != 0) {
+            superseded++;
+            finish();
+        }
+        commandMs = SystemClock.elapsedRealtime();
+        isCacheHit = null;
+        for (int i = 0; i < stageMs.length; i++) {
+            stageMs[i] = 0;
+        }
+        handler.postDelayed(timeout, TIMEOUT_MS);
+    }
+
+    /**
+     * @return histograms of the times from the command to each stage, by stage, for cache hits
+     * and for skips which loaded from the network
+     */
+    Map<String, Object> getLatencies(boolean reset) {
+        List<Long> bucketBounds = new ArrayList<>(BUCKET_BOUNDS_MS.length);
+        for (long bound : BUCKET_BOUNDS_MS) {
+            bucketBounds.add(bound);
+        }
+
+        Map<String, Object> latencies = new HashMap<>();
+        latencies.put("bucketBoundsMs", bucketBounds);
+        latencies.put("cache", toMap(cacheHistograms));
+        latencies.put("network", toMap(networkHistograms));
+        latencies.put("superseded", superseded);
+        latencies.put("timeouts", timeouts);
+        if (reset) {
+            cacheHistograms = newHistograms();
+            networkHistograms = newHistograms();
+            superseded = 0;
+            timeouts = 0;
+        }
+        return latencies;
+    }
+
+    void release() {
+        commandMs = 0;
+        handler.removeCallbacksAndMessages(null);
+        player.removeListener(this);
+    }
+
+    private void onStage(int stage) {
+        if (commandMs == 0 || stageMs[stage] != 0) {
+            return;
+        }
+        stageMs[stage] = Math.max(1, SystemClock.elapsedRealtime() - commandMs);
+    }
+
+    private void probeCache() {
+        if (isCacheHit != null) {
+            return;
+        }
+        Media media = callback.getCurrentMedia();
+        if (media != null) {
+            isCacheHit = cache.isCached(media.getUrl(), 0, CACHE_PROBE_BYTES);
+        }
+    }
+
+    private void onPollFirstAudio() {
+        if (commandMs == 0) {
+            return;
+        }
+        if (!player.getPlayWhenReady()) {
+            // paused before any audio, there is nothing more to measure
+            finish();
+            return;
+        }
+        if (player.getPlaybackState() == Player.STATE_READY && player.getCurrentPosition() > readyPosition) {
+            onStage(STAGE_FIRST_AUDIO);
+            finish();
+            return;
+        }
+        handler.postDelayed(pollFirstAudio, FIRST_AUDIO_POLL_INTERVAL_MS);
+    }
+
+    private void finish() {
+        handler.removeCallbacks(pollFirstAudio);
+        handler.removeCallbacks(timeout);
+        if (commandMs == 0) {
+            return;
+        }
+        commandMs = 0;
+        if (isCacheHit == null) {
+            // the player never got to the media
+            return;
+        }
+
+        Histogram[] histograms = isCacheHit ? cacheHistograms : networkHistograms;
+        for (int i = 0; i < stageMs.length; i++) {
+            if (stageMs[i] != 0) {
+                histograms[i].add(stageMs[i]);
+            }
+        }
+    }
+
+    private static Histogram[] newHistograms() {
+        Histogram[] histograms = new Histogram[STAGES.length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new Histogram();
+        }
+        return histograms;
+    }
+
+    private static Map<String, Object> toMap(Histogram[] histograms) {
+        Map<String, Object> map = new HashMap<>();
+        for (int i = 0; i < histograms.length; i++) {
+            map.put(STAGES[i], histograms[i].toMap());
+        }
+        return map;
+    }
+
+    @Override
+    public void onPositionDiscontinuity(int reason) {
+        if (reason == Player.DISCONTINUITY_REASON_SEEK) {
+            onStage(STAGE_DISCONTINUITY);
+            probeCache();
+        }
+    }
+
+    @Override
+    public void onPlayerStateChanged(boolean playWhenReady, int playbackState) {
+        if (commandMs == 0) {
+            return;
+        }
+
+        switch (playbackState) {
+            case Player.STATE_BUFFERING:
+                probeCache();
+                onStage(STAGE_BUFFERING);
+                break;
+            case Player.STATE_READY:
+                onStage(STAGE_READY);
+                readyPosition = player.getCurrentPosition();
+                handler.removeCallbacks(pollFirstAudio);
+                handler.post(pollFirstAudio);
+                break;
+            default:
+                finish();
+                break;
+        }
+    }
+
+    @Override
+    public void onTimelineChanged(Timeline timeline, @Nullable Object manifest, int reason) {
+    }
+
+    @Override
+    public void onTracksChanged(TrackGroupArray trackGroups, TrackSelectionArray trackSelections) {
+    }
+
+    @Override
+    public void onLoadingChanged(boolean isLoading) {
+    }
+
+    @Override
+    public void onRepeatModeChanged(int repeatMode) {
+    }
+
+    @Override
+    public void onShuffleModeEnabledChanged(boolean shuffleModeEnabled) {
+    }
+
+    @Override
+    public void onPlayerError(ExoPlaybackException error) {
+        finish();
+    }
+
+    @Override
+    public void onPlaybackParametersChanged(PlaybackParameters playbackParameters) {
+    }
+
+    @Override
+    public void onSeekProcessed() {
+    }
+}
@@ -10,6 +10,7 @@ public final class Utility {
         static final String DOWNLOAD_CONTENT_DIRECTORY = "downloads";
         static final String DOWNLOAD_ACTION_FILE = "actions";
         static final String DOWNLOAD_TRACKER_ACTION_FILE = "tracked_actions";
+        static final String AUDIO_QUEUE_FILE = "audio_queue";
     }
 
     public final class MediaIds {
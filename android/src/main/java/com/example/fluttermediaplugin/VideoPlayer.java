@@ -9,6 +9,7 @@ import android.view.Surface;
 import com.google.android.exoplayer2.ExoPlaybackException;
 import com.google.android.exoplayer2.ExoPlayerFactory;
 import com.google.android.exoplayer2.PlaybackParameters;
+import com.google.android.exoplayer2.Player;
 import com.google.android.exoplayer2.SimpleExoPlayer;
 import com.google.android.exoplayer2.Timeline;
 import com.google.android.exoplayer2.audio.AudioAttributes;
@@ -34,7 +35,6 @@ import com.google.android.exoplayer2.video.VideoListener;
 import java.util.HashMap;
 import java.util.Map;
 
-import io.flutter.plugin.common.MethodChannel;
 import io.flutter.view.TextureRegistry;
 
 import static com.example.fluttermediaplugin.FlutterMediaPlugin.VIDEO_METHOD_TYPE;
@@ -50,15 +50,21 @@ class VideoPlayer {
     private VideoExoPlayerListener videoExoPlayerListener;
 
     private SimpleExoPlayer simpleExoPlayer;
+    private ProfiledLoadControl loadControl;
     private Context context;
-    private MethodChannel channel;
+    private OutboundEventBus eventBus;
 
     private Surface surface;
     private TextureRegistry.SurfaceTextureEntry textureEntry;
 
-    VideoPlayer(@NonNull Context context, TextureRegistry textures, @NonNull MethodChannel channel) {
+    VideoPlayer(@NonNull Context context, TextureRegistry textures, @NonNull OutboundEventBus eventBus) {
         this.context = context;
-        this.channel = channel;
+        this.eventBus = eventBus;
+        eventBus.setLatestWins(VIDEO_METHOD_TYPE + "/onPlaybackUpdate");
+        eventBus.setLatestWins(VIDEO_METHOD_TYPE + "/onBufferedUpdate");
+        eventBus.setLatestWins(VIDEO_METHOD_TYPE + "/onRepeatModeChanged");
+        eventBus.setLatestWins(VIDEO_METHOD_TYPE + "/onShuffleModeEnabledChanged");
+        eventBus.setLatestWins(VIDEO_METHOD_TYPE + "/onSurfaceSizeChanged");
 
         initializeSimpleExoPlayer(context);
 
@@ -76,12 +82,14 @@ class VideoPlayer {
 
     private void initializeSimpleExoPlayer(Context context) {
         if (simpleExoPlayer != null) {
+            simpleExoPlayer.removeListener(videoExoPlayerListener);
             simpleExoPlayer.stop();
             simpleExoPlayer.release();
         }
 
         TrackSelector trackSelector = new DefaultTrackSelector();
-        simpleExoPlayer = ExoPlayerFactory.newSimpleInstance(context, trackSelector);
+        loadControl = new ProfiledLoadControl(loadControl != null ? loadControl.getProfile() : BufferProfile.DEFAULT);
+        simpleExoPlayer = ExoPlayerFactory.newSimpleInstance(context, trackSelector, loadControl);
         AudioAttributes audioAttributes = new AudioAttributes.Builder()
                 .setUsage(USAGE_MEDIA)
                 .setContentType(CONTENT_TYPE_MOVIE)
@@ -91,6 +99,8 @@ class VideoPlayer {
 
         if (videoExoPlayerListener == null) {
             videoExoPlayerListener = new VideoExoPlayerListener();
+        } else {
+            videoExoPlayerListener.setPlayer(simpleExoPlayer);
         }
         simpleExoPlayer.addListener(videoExoPlayerListener);
 
@@ -142,10 +152,6 @@ class VideoPlayer {
         }
     }
 
-    void setChannel(MethodChannel channel) {
-        this.channel = channel;
-    }
-
     void addAndPlay(String url, TextureRegistry textures) {
         Uri uri = Uri.parse(url);
         Log.d(TAG, "Uri : " + uri);
@@ -177,6 +183,28 @@ class VideoPlayer {
         simpleExoPlayer.prepare(mediaSource);
     }
 
+    /**
+     * Applies to the buffering from now on. A player only reads its back buffer when it is
+     * created, so an idle player is created again if the back buffer changed.
+     */
+    void setBufferProfile(@NonNull BufferProfile bufferProfile) {
+        loadControl.setProfile(bufferProfile);
+        if (bufferProfile.backBufferMs == loadControl.getBackBufferMs()
+                || simpleExoPlayer.getPlaybackState() != Player.STATE_IDLE) {
+            return;
+        }
+
+        int repeatMode = simpleExoPlayer.getRepeatMode();
+        float volume = simpleExoPlayer.getVolume();
+        initializeSimpleExoPlayer(context);
+        simpleExoPlayer.setRepeatMode(repeatMode);
+        simpleExoPlayer.setVolume(volume);
+        if (surface != null) {
+            simpleExoPlayer.setVideoSurface(surface);
+        }
+        videoExoPlayerListener.onInitialized();
+    }
+
     void play() {
         simpleExoPlayer.setPlayWhenReady(true);
     }
@@ -240,20 +268,20 @@ class VideoPlayer {
             }
 
             String method = VIDEO_METHOD_TYPE + "/onInitialized";
-            channel.invokeMethod(method, args);
+            eventBus.send(method, args);
         }
 
         void onTextureIdChanged(long id) {
             Map<String, Object> args = new HashMap<>();
             args.put("textureId", id);
-            channel.invokeMethod(VIDEO_METHOD_TYPE + "/onTextureIdChanged", args);
+            eventBus.send(VIDEO_METHOD_TYPE + "/onTextureIdChanged", args);
         }
 
         void onSurfaceSizeChanged(int width, int height) {
             Map<String, Object> args = new HashMap<>();
             args.put("width", width);
             args.put("height", height);
-            channel.invokeMethod(VIDEO_METHOD_TYPE + "/onSurfaceSizeChanged", args);
+            eventBus.send(VIDEO_METHOD_TYPE + "/onSurfaceSizeChanged", args);
         }
 
         @Override
@@ -283,7 +311,7 @@ class VideoPlayer {
             args.put("playbackState", playbackState);
             String method = VIDEO_METHOD_TYPE + "/onPlayerStateChanged";
 //                Log.d(TAG, "onPlayerStateChanged : " + playbackState + ", " + method);
-            channel.invokeMethod(method, args);
+            eventBus.send(method, args);
         }
 
         @Override
@@ -294,7 +322,7 @@ class VideoPlayer {
             args.put("repeatMode", repeatMode);
             String method = VIDEO_METHOD_TYPE + "/onRepeatModeChanged";
 //                Log.d(TAG, "onRepeatModeChanged : " + repeatMode + ", " + method);
-            channel.invokeMethod(method, args);
+            eventBus.send(method, args);
         }
 
         @Override
@@ -305,7 +333,7 @@ class VideoPlayer {
             args.put("shuffleModeEnabled", shuffleModeEnabled);
             String method = VIDEO_METHOD_TYPE + "/onShuffleModeEnabledChanged";
 //                Log.d(TAG, "onShuffleModeEnabledChanged : " + shuffleModeEnabled + ", " + method);
-            channel.invokeMethod(method, args);
+            eventBus.send(method, args);
         }
 
         @Override
@@ -341,7 +369,7 @@ class VideoPlayer {
 //            Map<String, Object> songMap = Song.toMap(song);
 //            args.put("currentPlayingSong", songMap);
 //            String method = VIDEO_METHOD_TYPE + "/onMediaPeriodCreated";
-//            channel.invokeMethod(method, args);
+//            eventBus.send(method, args);
         }
 
         @Override
@@ -353,7 +381,7 @@ class VideoPlayer {
             args.put("position", position);
             args.put("audioLength", audioLength);
             String method = VIDEO_METHOD_TYPE + "/onPlaybackUpdate";
-            channel.invokeMethod(method, args);
+            eventBus.send(method, args);
         }
 
         @Override
@@ -364,7 +392,7 @@ class VideoPlayer {
             Map<String, Object> args = new HashMap<>();
             args.put("percent", percent);
             String method = VIDEO_METHOD_TYPE + "/onBufferedUpdate";
-            channel.invokeMethod(method, args);
+            eventBus.send(method, args);
         }
 
         @Override
@@ -374,7 +402,7 @@ class VideoPlayer {
             Map<String, Object> args = new HashMap<>();
             args.put("message", message);
             String method = VIDEO_METHOD_TYPE + "/onPlayerStatus";
-            channel.invokeMethod(method, args);
+            eventBus.send(method, args);
         }
 
         @Override
@@ -0,0 +1,71 @@
+package com.example.fluttermediaplugin;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the parsing and serialization stages of heavy plugin methods off the platform thread.
+ * The result of a job is delivered back on the main looper, which is also the looper of the
+ * players, so the player can be touched and the method result completed from there.
+ */
+final class WorkerExecutor {
+    private static final String TAG = "WorkerExecutor";
+    private static final int WORKER_COUNT = 2;
+
+    abstract static class Job<T> {
+        abstract T doInBackground() throws Exception;
+
+        abstract void onResult(T value);
+
+        void onError(@NonNull Exception e) {
+            Log.e(TAG, "Background job failed", e);
+        }
+    }
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static final ExecutorService executor = Executors.newFixedThreadPool(WORKER_COUNT, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            Thread thread = new Thread(runnable, "flutter_media_worker_" + count.incrementAndGet());
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    });
+
+    private WorkerExecutor() {
+    }
+
+    static <T> void execute(@NonNull final Job<T> job) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final T value = job.doInBackground();
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            job.onResult(value);
+                        }
+                    });
+                } catch (final Exception e) {
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            job.onError(e);
+                        }
+                    });
+                }
+            }
+        });
+    }
+}
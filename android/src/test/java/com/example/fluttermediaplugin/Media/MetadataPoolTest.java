@@ -0,0 +1,79 @@
+package com.example.fluttermediaplugin.Media;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class MetadataPoolTest {
+    private static final int SONG_COUNT = 20000;
+    private static final int SONGS_PER_ALBUM = 12;
+    private static final int ALBUMS_PER_ARTIST = 4;
+
+    // a new copy of every field, like a decoder creates them
+    private static String[] decodeFields(int i) {
+        int album = i / SONGS_PER_ALBUM;
+        return new String[]{
+                new String("key" + i),
+                new String("title of song " + i),
+                new String("artist with a name " + (album / ALBUMS_PER_ARTIST)),
+                new String("album with a title " + album),
+                new String("https://example.com/art/" + album + ".jpg"),
+                new String("https://example.com/song/" + i + ".mp3")};
+    }
+
+    @Test
+    public void returnsThePooledValue() {
+        String first = new String("an album");
+        String second = new String("an album");
+        assertNotSame(first, second);
+
+        assertSame(first, MetadataPool.intern(first));
+        assertSame(first, MetadataPool.intern(second));
+    }
+
+    @Test
+    public void songsOfAnAlbumShareTheirMetadata() {
+        String[] first = decodeFields(0);
+        String[] second = decodeFields(1);
+        Song firstSong = Song.create(first[0], first[1], first[2], first[3], first[4], first[5]);
+        Song secondSong = Song.create(second[0], second[1], second[2], second[3], second[4], second[5]);
+
+        assertSame(firstSong.getRawArtist(), secondSong.getRawArtist());
+        assertSame(firstSong.getRawAlbum(), secondSong.getRawAlbum());
+        assertSame(firstSong.getAlbumArtUri(), secondSong.getAlbumArtUri());
+    }
+
+    /**
+     * Every distinct artist, album and album art url of a queue is held once, however many
+     * songs refer to it.
+     */
+    @Test
+    public void queueHoldsOneInstancePerValue() {
+        ArrayList<Song> songs = new ArrayList<>(SONG_COUNT);
+        for (int i = 0; i < SONG_COUNT; i++) {
+            String[] fields = decodeFields(i);
+            songs.add(Song.create(fields[0], fields[1], fields[2], fields[3], fields[4], fields[5]));
+        }
+
+        Set<String> artists = Collections.newSetFromMap(new IdentityHashMap<String, Boolean>());
+        Set<String> albums = Collections.newSetFromMap(new IdentityHashMap<String, Boolean>());
+        Set<String> albumArtUris = Collections.newSetFromMap(new IdentityHashMap<String, Boolean>());
+        for (Song song : songs) {
+            artists.add(song.getRawArtist());
+            albums.add(song.getRawAlbum());
+            albumArtUris.add(song.getAlbumArtUri());
+        }
+
+        int albumCount = (SONG_COUNT + SONGS_PER_ALBUM - 1) / SONGS_PER_ALBUM;
+        assertEquals(albumCount, albums.size());
+        assertEquals(albumCount, albumArtUris.size());
+        assertEquals((albumCount + ALBUMS_PER_ARTIST - 1) / ALBUMS_PER_ARTIST, artists.size());
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.fluttermediaplugin;
+
+import com.example.fluttermediaplugin.Media.Media;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.SimpleExoPlayer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class MediaExoPlayerListenerTest {
+    private static final class RecordingListener extends MediaExoPlayerListener<Media> {
+        final List<Integer> bufferedUpdates = new ArrayList<>();
+
+        RecordingListener(SimpleExoPlayer simpleExoPlayer) {
+            super(simpleExoPlayer, "test");
+        }
+
+        @Override
+        void onBufferedUpdate(int percent) {
+            bufferedUpdates.add(percent);
+        }
+    }
+
+    @Test
+    public void readsThePlayerItWasRebound() {
+        SimpleExoPlayer released = mock(SimpleExoPlayer.class);
+        SimpleExoPlayer created = mock(SimpleExoPlayer.class);
+        when(created.getBufferedPercentage()).thenReturn(42);
+        when(created.getPlaybackState()).thenReturn(Player.STATE_READY);
+        RecordingListener listener = new RecordingListener(released);
+
+        listener.setPlayer(created);
+        reset(released);
+        listener.bufferedUpdates.clear();
+        listener.onPlayerStateChanged(false, Player.STATE_READY);
+
+        assertEquals(1, listener.bufferedUpdates.size());
+        assertEquals(42, (int) listener.bufferedUpdates.get(0));
+        verifyZeroInteractions(released);
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.fluttermediaplugin;
+
+import com.example.fluttermediaplugin.Media.Song;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.example.fluttermediaplugin.Utility.MediaIds.ALBUM_ART_URL_TAG;
+import static com.example.fluttermediaplugin.Utility.MediaIds.KEY_TAG;
+import static com.example.fluttermediaplugin.Utility.MediaIds.SONG_ALBUM_TAG;
+import static com.example.fluttermediaplugin.Utility.MediaIds.SONG_ARTISTS_TAG;
+import static com.example.fluttermediaplugin.Utility.MediaIds.TITLE_TAG;
+import static com.example.fluttermediaplugin.Utility.MediaIds.URL_TAG;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PlaylistCodecTest {
+    private static final int SONG_COUNT = 20000;
+
+    static ArrayList<Song> createSongs(int count) {
+        ArrayList<Song> songs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int album = i / 12;
+            songs.add(Song.create("key" + i, "title " + i, "artist " + (album / 4), "album " + album,
+                    "https://example.com/art/" + album + ".jpg", "https://example.com/song/" + i + ".mp3"));
+        }
+        return songs;
+    }
+
+    @Test
+    public void decodesWhatItEncodes() {
+        ArrayList<Song> songs = createSongs(100);
+        PlaylistCodec.DecodedPlaylist decoded = PlaylistCodec.decode(PlaylistCodec.encode("queue", songs));
+
+        assertNotNull(decoded);
+        assertEquals("queue", decoded.playlistName);
+        assertEquals(songs.size(), decoded.songs.size());
+        for (int i = 0; i < songs.size(); i++) {
+            Song song = songs.get(i);
+            Song decodedSong = decoded.songs.get(i);
+            assertEquals(song.getKey(), decodedSong.getKey());
+            assertEquals(song.getRawTitle(), decodedSong.getRawTitle());
+            assertEquals(song.getRawArtist(), decodedSong.getRawArtist());
+            assertEquals(song.getRawAlbum(), decodedSong.getRawAlbum());
+            assertEquals(song.getAlbumArtUri(), decodedSong.getAlbumArtUri());
+            assertEquals(song.getUrl(), decodedSong.getUrl());
+        }
+    }
+
+    @Test
+    public void decodesEmptyPlaylist() {
+        PlaylistCodec.DecodedPlaylist decoded = PlaylistCodec.decode(PlaylistCodec.encode("", new ArrayList<Song>()));
+
+        assertNotNull(decoded);
+        assertEquals("", decoded.playlistName);
+        assertTrue(decoded.songs.isEmpty());
+    }
+
+    @Test
+    public void rejectsTruncatedBytes() {
+        byte[] bytes = PlaylistCodec.encode("queue", createSongs(10));
+        for (int length = 0; length < bytes.length; length++) {
+            assertNull(PlaylistCodec.decode(Arrays.copyOf(bytes, length)));
+        }
+    }
+
+    @Test
+    public void rejectsOtherVersion() {
+        byte[] bytes = PlaylistCodec.encode("queue", createSongs(1));
+        bytes[0] = 2;
+        assertNull(PlaylistCodec.decode(bytes));
+    }
+
+    @Test
+    public void rejectsMalformedCounts() {
+        // version 1, then a string count which is negative as an int
+        assertNull(PlaylistCodec.decode(new byte[]{1, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x0f}));
+        // a string count far beyond the bytes
+        assertNull(PlaylistCodec.decode(new byte[]{1, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x7f}));
+        // one empty string, name ref 0, a negative song count
+        assertNull(PlaylistCodec.decode(new byte[]{1, 1, 0, 0, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x0f}));
+        // one empty string, name ref 0, a song count far beyond the bytes
+        assertNull(PlaylistCodec.decode(new byte[]{1, 1, 0, 0, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x7f}));
+        // a string longer than the bytes
+        assertNull(PlaylistCodec.decode(new byte[]{1, 1, 0x7f, 0}));
+        // a song referring to a string which doesn't exist
+        assertNull(PlaylistCodec.decode(new byte[]{1, 1, 0, 0, 1, 0, 0, 0, 0, 0, 5}));
+    }
+
+    @Test
+    public void isSmallerThanJson() throws Exception {
+        ArrayList<Song> songs = createSongs(SONG_COUNT);
+
+        byte[] bytes = PlaylistCodec.encode("queue", songs);
+        String json = toJson("queue", songs);
+
+        assertEquals(SONG_COUNT, PlaylistCodec.decode(bytes).songs.size());
+        assertEquals(SONG_COUNT, fromJson(json).size());
+        assertTrue(bytes.length < json.getBytes(Charset.forName("UTF-8")).length);
+    }
+
+    private static String toJson(String playlistName, List<Song> songs) throws Exception {
+        JSONArray mediaPlaylist = new JSONArray();
+        for (Song song : songs) {
+            mediaPlaylist.put(new JSONObject(song.toMap()));
+        }
+        JSONObject playlist = new JSONObject();
+        playlist.put("playlistName", playlistName);
+        playlist.put("mediaPlaylist", mediaPlaylist);
+        return playlist.toString();
+    }
+
+    private static List<Song> fromJson(String json) throws Exception {
+        JSONArray mediaPlaylist = new JSONObject(json).getJSONArray("mediaPlaylist");
+        ArrayList<Song> songs = new ArrayList<>(mediaPlaylist.length());
+        for (int i = 0; i < mediaPlaylist.length(); i++) {
+            JSONObject song = mediaPlaylist.getJSONObject(i);
+            songs.add(Song.create(song.getString(KEY_TAG), song.getString(TITLE_TAG), song.getString(SONG_ARTISTS_TAG),
+                    song.getString(SONG_ALBUM_TAG), song.getString(ALBUM_ART_URL_TAG), song.getString(URL_TAG)));
+        }
+        return songs;
+    }
+}
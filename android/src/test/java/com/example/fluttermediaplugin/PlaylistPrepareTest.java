@@ -0,0 +1,55 @@
+package com.example.fluttermediaplugin;
+
+import com.example.fluttermediaplugin.Media.Song;
+import com.google.android.exoplayer2.SimpleExoPlayer;
+import com.google.android.exoplayer2.source.MediaSource;
+import com.google.android.exoplayer2.source.MediaSourceEventListener;
+import com.google.android.exoplayer2.source.ProgressiveMediaSource;
+import com.google.android.exoplayer2.upstream.DataSource;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class PlaylistPrepareTest {
+    private static final int SONG_COUNT = 5000;
+
+    private static final class CountingPlaylist extends Playlist<Song> {
+        // no initializer, the constructor of Playlist already counts its shared factory
+        int createdFactories;
+
+        CountingPlaylist(SimpleExoPlayer simpleExoPlayer) {
+            super("queue", simpleExoPlayer, mock(MediaSourceEventListener.class), mock(DataSource.Factory.class),
+                    MediaSourceSettings.DEFAULT, false, 0);
+        }
+
+        @Override
+        ProgressiveMediaSource.Factory createMediaSourceFactory() {
+            createdFactories++;
+            return super.createMediaSourceFactory();
+        }
+    }
+
+    /**
+     * The playlist used to create a media source factory per song, so preparing it created
+     * SONG_COUNT factories.
+     */
+    @Test
+    public void preparesAllSongsWithOneFactory() {
+        SimpleExoPlayer simpleExoPlayer = mock(SimpleExoPlayer.class);
+        CountingPlaylist playlist = new CountingPlaylist(simpleExoPlayer);
+        ArrayList<Song> songs = PlaylistCodecTest.createSongs(SONG_COUNT);
+
+        playlist.prepare(songs, 0, 0, mock(Runnable.class));
+
+        assertEquals(SONG_COUNT, playlist.getSize());
+        assertEquals(1, playlist.createdFactories);
+        verify(simpleExoPlayer, times(1)).prepare(any(MediaSource.class));
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.fluttermediaplugin;
+
+import com.example.fluttermediaplugin.Media.Song;
+import com.google.android.exoplayer2.SimpleExoPlayer;
+import com.google.android.exoplayer2.source.MediaSourceEventListener;
+import com.google.android.exoplayer2.upstream.DataSource;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.mockito.Mockito.mock;
+
+public class PlaylistSearchTest {
+    private static Playlist<Song> preparedPlaylist(ArrayList<Song> songs) {
+        Playlist<Song> playlist = new Playlist<>("queue", mock(SimpleExoPlayer.class), mock(MediaSourceEventListener.class),
+                mock(DataSource.Factory.class), MediaSourceSettings.DEFAULT, false, 0);
+        playlist.prepare(songs, 0, 0, mock(Runnable.class));
+        return playlist;
+    }
+
+    @Test
+    public void returnsTheFirstMatchesInPlaylistOrder() {
+        // every song has a title token
+        Playlist<Song> playlist = preparedPlaylist(PlaylistCodecTest.createSongs(20000));
+
+        assertArrayEquals(new int[]{0, 1, 2}, playlist.search("t", 3));
+        assertArrayEquals(new int[]{19999}, playlist.search("title 19999", 5));
+        assertArrayEquals(new int[0], playlist.search("t", 0));
+    }
+
+    @Test
+    public void returnsEveryIndexOfADuplicatedMedia() {
+        ArrayList<Song> songs = PlaylistCodecTest.createSongs(5);
+        songs.add(songs.get(1));
+        songs.add(songs.get(1));
+        Playlist<Song> playlist = preparedPlaylist(songs);
+
+        assertArrayEquals(new int[]{1, 5, 6}, playlist.search("title 1", 10));
+        assertArrayEquals(new int[]{1, 5}, playlist.search("title 1", 2));
+    }
+}
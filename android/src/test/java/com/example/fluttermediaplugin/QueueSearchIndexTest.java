@@ -0,0 +1,46 @@
+package com.example.fluttermediaplugin;
+
+import com.example.fluttermediaplugin.Media.Media;
+import com.example.fluttermediaplugin.Media.Song;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QueueSearchIndexTest {
+    private final Song first = Song.create("1", "Blue Train", "John Coltrane", "Blue Train", "art", "url1");
+    private final Song second = Song.create("2", "Giant Steps", "John Coltrane", "Giant Steps", "art", "url2");
+    private final Song third = Song.create("3", "So What", "Miles Davis", "Kind of Blue", "art", "url3");
+
+    @Test
+    public void matchesEveryQueryTokenAsPrefix() {
+        QueueSearchIndex index = new QueueSearchIndex();
+        index.onInserted(Arrays.asList(first, second, third));
+
+        assertEquals(Collections.singleton((Media) first), index.search("coltrane BLU").keySet());
+        assertEquals(2, index.search("john").size());
+        assertEquals(2, index.search("bl").size());
+        assertTrue(index.search("trumpet").isEmpty());
+        assertTrue(index.search(" - ").isEmpty());
+    }
+
+    @Test
+    public void countsHowOftenMediaIsQueued() {
+        QueueSearchIndex index = new QueueSearchIndex();
+        index.onInserted(Arrays.asList(first, second, first));
+
+        IdentityHashMap<Media, Integer> matches = index.search("john");
+        assertEquals(2, (int) matches.get(first));
+        assertEquals(1, (int) matches.get(second));
+
+        index.onRemoved(Collections.singletonList(first));
+        assertEquals(1, (int) index.search("blue").get(first));
+        index.onRemoved(Collections.singletonList(first));
+        assertTrue(index.search("blue").isEmpty());
+    }
+}
@@ -1,10 +1,12 @@
 import 'dart:async';
-import 'dart:convert';
+import 'dart:typed_data';
 
 import 'package:flutter/services.dart';
 import 'package:flutter_media_plugin/flutter_media_plugin.dart';
 import 'package:flutter_media_plugin/exo_player_listener.dart';
 import 'package:flutter_media_plugin/playlist.dart';
+import 'package:flutter_media_plugin/playlist_codec.dart';
+import 'package:flutter_media_plugin/position_anchor.dart';
 import 'package:flutter_media_plugin/media/song.dart';
 import 'package:flutter_media_plugin/utility.dart';
 
@@ -25,9 +27,23 @@ class AudioPlayer {
   int _nextWindowIndex = -1;
 
   Playlist<Song> _currentPlaylist;
+  int _playlistRevision = -1;
+
+  // In paged mode no playlist copy is held, only its metadata, the current
+  // song and the subscribed window.
+  bool _isPlaylistPaged = false;
+  String _pagedPlaylistName = "";
+  int _pagedPlaylistSize = -1;
+  Song _pagedPlayingSong;
+  int _playlistWindowOffset = 0;
+  List<Song> _playlistWindow = [];
 
   final Set<ExoPlayerListener<Song>> _exoPlayerListeners = Set();
 
+  static const EventChannel _positionChannel =
+      const EventChannel('flutter_media_plugin/audio_position');
+  Stream<PositionAnchor> _positionAnchors;
+
   bool get playWhenReady => _playWhenReady;
 
   int get playbackState => _playbackState;
@@ -46,7 +62,16 @@ class AudioPlayer {
 
   int get nextWindowIndex => _nextWindowIndex;
 
+  bool get isPlaylistPaged => _isPlaylistPaged;
+
+  int get playlistWindowOffset => _playlistWindowOffset;
+
+  List<Song> get playlistWindow => _playlistWindow;
+
   Song get currentPlayingSong {
+    if (_isPlaylistPaged) {
+      return _pagedPlayingSong;
+    }
     if (_currentPlaylist == null) {
       return null;
     }
@@ -54,6 +79,9 @@ class AudioPlayer {
   }
 
   int get playlistSize {
+    if (_isPlaylistPaged) {
+      return _pagedPlaylistSize;
+    }
     if (_currentPlaylist == null) {
       return -1;
     }
@@ -61,6 +89,9 @@ class AudioPlayer {
   }
 
   String get playlistName {
+    if (_isPlaylistPaged) {
+      return _pagedPlaylistName;
+    }
     if (_currentPlaylist == null) {
       return "";
     }
@@ -68,7 +99,27 @@ class AudioPlayer {
     return _currentPlaylist.playlistName;
   }
 
+  /// Position anchors sent on seek, state, speed and track changes. While this
+  /// stream is listened to, onPlaybackUpdate is no longer polled and the
+  /// position should be interpolated with [PositionAnchor.positionAt].
+  Stream<PositionAnchor> get positionAnchors {
+    if (_positionAnchors == null) {
+      _positionAnchors = _positionChannel
+          .receiveBroadcastStream()
+          .map((dynamic map) => PositionAnchor.fromMap(map));
+    }
+    return _positionAnchors;
+  }
+
+  /// In paged mode only songs of the subscribed window are known.
   Song getSongAtIndex(int index) {
+    if (_isPlaylistPaged) {
+      int windowIndex = index - _playlistWindowOffset;
+      if (windowIndex < 0 || windowIndex >= _playlistWindow.length) {
+        return null;
+      }
+      return _playlistWindow[windowIndex];
+    }
     if (_currentPlaylist == null) {
       return null;
     }
@@ -80,7 +131,96 @@ class AudioPlayer {
   }
 
   void _initialize() {
-    channel.invokeMethod('${FlutterMediaPlugin.AUDIO_METHOD_TYPE}/initialize');
+    channel.invokeMethod(
+      '${FlutterMediaPlugin.AUDIO_METHOD_TYPE}/initialize',
+      {
+        'revision': _playlistRevision,
+        'paged': _isPlaylistPaged,
+      },
+    );
+  }
+
+  void _setPagedPlaylist(String playlistName, int playlistSize, int revision) {
+    _pagedPlaylistName = playlistName ?? "";
+    _pagedPlaylistSize = playlistSize ?? -1;
+    _playlistRevision = revision ?? -1;
+    if (_pagedPlaylistSize <= 0) {
+      _pagedPlayingSong = null;
+      _playlistWindow = [];
+    }
+  }
+
+  void _onPlaylistChanged(Playlist<Song> playlist, int revision) {
+    for (ExoPlayerListener listener in _exoPlayerListeners) {
+      listener.onPlaylistChanged(playlist);
+    }
+    _playlistRevision = revision;
+    if (playlist.getSize() <= 0) {
+      _currentPlaylist = null;
+      _currentWindowIndex = -1;
+      _nextWindowIndex = -1;
+    } else {
+      _currentPlaylist = playlist;
+    }
+  }
+
+  /// Applies native playlist deltas in order, returns false if they don't
+  /// start at the revision held here.
+  bool _applyPlaylistDeltas(List<dynamic> deltas) {
+    if (deltas.isEmpty) {
+      return true;
+    }
+    if (_currentPlaylist == null ||
+        deltas.first['baseRevision'] != _playlistRevision) {
+      return false;
+    }
+
+    for (Map<dynamic, dynamic> delta in deltas) {
+      switch (delta['op']) {
+        case 'insert':
+          int index = delta['index'];
+          for (Map<dynamic, dynamic> songMap in delta['media']) {
+            _currentPlaylist.addMediaAtIndex(
+                index++, Song.fromMap(Map<String, dynamic>.from(songMap)));
+          }
+          break;
+        case 'remove':
+          _currentPlaylist.removeMediaRange(
+              delta['index'], delta['index'] + delta['count']);
+          break;
+        case 'move':
+          _currentPlaylist.moveMediaRange(
+              delta['from'], delta['from'] + delta['count'], delta['to']);
+          break;
+      }
+      _playlistRevision = delta['revision'];
+    }
+
+    for (ExoPlayerListener listener in _exoPlayerListeners) {
+      listener.onPlaylistChanged(_currentPlaylist);
+    }
+    return true;
+  }
+
+  /// Brings the playlist up to the native revision, with deltas if the
+  /// native side still has them, otherwise with a full snapshot.
+  Future<void> _syncPlaylist() async {
+    Map<dynamic, dynamic> sync = await channel.invokeMethod(
+      '${FlutterMediaPlugin.AUDIO_METHOD_TYPE}/syncPlaylist',
+      {
+        'revision': _playlistRevision,
+      },
+    );
+    if (sync == null) {
+      return;
+    }
+
+    Uint8List playlistBytes = sync['playlistBytes'];
+    if (playlistBytes != null) {
+      _onPlaylistChanged(PlaylistCodec.decode(playlistBytes), sync['revision']);
+    } else if (sync['deltas'] != null) {
+      _applyPlaylistDeltas(sync['deltas']);
+    }
   }
 
   void callMethod(String method, dynamic arguments) {
@@ -94,12 +234,21 @@ class AudioPlayer {
         _currentWindowIndex = arguments['windowIndex'];
         _nextWindowIndex = arguments['nextWindowIndex'];
 
-        String playlistString = arguments['playlist'];
-        if (playlistString != null) {
-          Map<String, dynamic> map = json.decode(playlistString);
-          Playlist<Song> playlist = Playlist.songsPlaylistFromMap(map);
-          _currentPlaylist = playlist;
-        } else {
+        Uint8List playlistBytes = arguments['playlistBytes'];
+        int revision = arguments['revision'];
+        if (_isPlaylistPaged) {
+          _setPagedPlaylist(arguments['playlistName'],
+              arguments['playlistSize'], revision);
+          if (revision == null) {
+            _currentWindowIndex = -1;
+            _nextWindowIndex = -1;
+          }
+        } else if (playlistBytes != null) {
+          _currentPlaylist = PlaylistCodec.decode(playlistBytes);
+          _playlistRevision = revision;
+        } else if (revision == null) {
+          _currentPlaylist = null;
+          _playlistRevision = -1;
           _currentWindowIndex = -1;
           _nextWindowIndex = -1;
         }
@@ -127,6 +276,9 @@ class AudioPlayer {
           listener.onTracksChanged(windowIndex, nextWindowIndex, song);
         }
 
+        if (_isPlaylistPaged) {
+          _pagedPlayingSong = song;
+        }
         _currentWindowIndex = windowIndex;
         _nextWindowIndex = nextWindowIndex;
 //        print("Audio Player: onTracksChanged windowIndex $windowIndex");
@@ -197,6 +349,12 @@ class AudioPlayer {
         _shuffleModeEnabled = shuffleModeEnabled;
         _nextWindowIndex = nextWindowIndex;
         break;
+      case "onTrackTransition":
+        TrackTransition transition = TrackTransition.fromMap(arguments);
+        for (ExoPlayerListener listener in _exoPlayerListeners) {
+          listener.onTrackTransition(transition);
+        }
+        break;
       case "onPlayerStatus":
         String message = arguments['message'];
         for (ExoPlayerListener listener in _exoPlayerListeners) {
@@ -204,18 +362,45 @@ class AudioPlayer {
         }
         break;
       case "onPlaylistChanged":
-        String playlistString = arguments['playlist'];
-        Map<String, dynamic> map = json.decode(playlistString);
-        Playlist<Song> playlist = Playlist.songsPlaylistFromMap(map);
+        if (_isPlaylistPaged) {
+          _setPagedPlaylist(arguments['playlistName'],
+              arguments['playlistSize'], arguments['revision']);
+          break;
+        }
+        Uint8List playlistBytes = arguments['playlistBytes'];
+        _onPlaylistChanged(
+            PlaylistCodec.decode(playlistBytes), arguments['revision']);
+        break;
+      case "onPlaylistWindow":
+        Playlist<Song> page = PlaylistCodec.decode(arguments['playlistBytes']);
+        _playlistWindowOffset = arguments['offset'];
+        _playlistWindow = page.mediaList;
+        _setPagedPlaylist(
+            page.playlistName, arguments['playlistSize'], arguments['revision']);
         for (ExoPlayerListener listener in _exoPlayerListeners) {
-          listener.onPlaylistChanged(playlist);
+          listener.onPlaylistWindowChanged(
+              _playlistWindowOffset, _playlistWindow);
         }
-        if (playlist.getSize() <= 0) {
-          _currentPlaylist = null;
-          _currentWindowIndex = -1;
-          _nextWindowIndex = -1;
-        } else {
-          _currentPlaylist = playlist;
+        break;
+      case "onPlaylistDelta":
+        if (_isPlaylistPaged) {
+          _setPagedPlaylist(arguments['playlistName'],
+              arguments['playlistSize'], arguments['revision']);
+          break;
+        }
+        if (_currentPlaylist == null ||
+            _currentPlaylist.playlistName != arguments['playlistName'] ||
+            !_applyPlaylistDeltas(arguments['deltas'])) {
+          _syncPlaylist();
+        }
+        break;
+      case "onPlaylistResync":
+        // playlist edits were collapsed while the native event queue was full
+        if (_isPlaylistPaged) {
+          _setPagedPlaylist(arguments['playlistName'],
+              arguments['playlistSize'], arguments['revision']);
+        } else if (arguments['revision'] != _playlistRevision) {
+          _syncPlaylist();
         }
         break;
       case "onMediaAddedToPlaylist":
@@ -223,11 +408,23 @@ class AudioPlayer {
         int index = arguments['index'];
         Map<String, dynamic> songMap = Map.from(arguments['song']);
         Song song = Song.fromMap(songMap);
-        if (_currentPlaylist.playlistName == playlistName) {
+        if (_isPlaylistPaged) {
+          for (ExoPlayerListener listener in _exoPlayerListeners) {
+            listener.onMediaAddedToPlaylist(playlistName, index, song);
+          }
+          _setPagedPlaylist(
+              playlistName, _pagedPlaylistSize + 1, arguments['revision']);
+        } else if (_currentPlaylist != null &&
+            _currentPlaylist.playlistName == playlistName) {
           for (ExoPlayerListener listener in _exoPlayerListeners) {
             listener.onMediaAddedToPlaylist(playlistName, index, song);
           }
-          _currentPlaylist.addMediaAtIndex(index, song);
+          if (arguments['baseRevision'] == _playlistRevision) {
+            _currentPlaylist.addMediaAtIndex(index, song);
+            _playlistRevision = arguments['revision'];
+          } else {
+            _syncPlaylist();
+          }
         } else {
           print("Audio Player: currentPlaylist name is not equal");
         }
@@ -237,11 +434,23 @@ class AudioPlayer {
         int index = arguments['index'];
         Map<String, dynamic> songMap = Map.from(arguments['song']);
         Song song = Song.fromMap(songMap);
-        if (_currentPlaylist.playlistName == playlistName) {
+        if (_isPlaylistPaged) {
           for (ExoPlayerListener listener in _exoPlayerListeners) {
             listener.onMediaRemovedFromPlaylist(playlistName, index, song);
           }
-          _currentPlaylist.removeMediaAtIndex(index);
+          _setPagedPlaylist(
+              playlistName, _pagedPlaylistSize - 1, arguments['revision']);
+        } else if (_currentPlaylist != null &&
+            _currentPlaylist.playlistName == playlistName) {
+          for (ExoPlayerListener listener in _exoPlayerListeners) {
+            listener.onMediaRemovedFromPlaylist(playlistName, index, song);
+          }
+          if (arguments['baseRevision'] == _playlistRevision) {
+            _currentPlaylist.removeMediaAtIndex(index);
+            _playlistRevision = arguments['revision'];
+          } else {
+            _syncPlaylist();
+          }
         } else {
           print("Audio Player: currentPlaylist name is not equal");
         }
@@ -334,10 +543,10 @@ class AudioPlayer {
 
 // add song at last position
   Future<bool> addSong(Song song, {bool shouldPlay = false}) async {
-    if (_currentPlaylist == null) {
+    if (playlistSize < 0) {
       return false;
     }
-    return await addSongAtIndex(_currentPlaylist.getSize(), song,
+    return await addSongAtIndex(playlistSize, song,
         shouldPlay: shouldPlay);
   }
 
@@ -368,15 +577,283 @@ class AudioPlayer {
     );
   }
 
+  /// Extractor flags and loading interval of the media sources of playlists
+  /// set afterwards. The flags are those of ExoPlayer's Mp3Extractor,
+  /// Mp4Extractor and AdtsExtractor, omitted values keep their default.
+  Future<void> setMediaSourceSettings({
+    int mp3ExtractorFlags,
+    int mp4ExtractorFlags,
+    int adtsExtractorFlags,
+    int continueLoadingCheckIntervalBytes,
+  }) async {
+    Map<String, dynamic> settings = {};
+    if (mp3ExtractorFlags != null) {
+      settings['mp3ExtractorFlags'] = mp3ExtractorFlags;
+    }
+    if (mp4ExtractorFlags != null) {
+      settings['mp4ExtractorFlags'] = mp4ExtractorFlags;
+    }
+    if (adtsExtractorFlags != null) {
+      settings['adtsExtractorFlags'] = adtsExtractorFlags;
+    }
+    if (continueLoadingCheckIntervalBytes != null) {
+      settings['continueLoadingCheckIntervalBytes'] =
+          continueLoadingCheckIntervalBytes;
+    }
+    await channel.invokeMethod(
+      '${FlutterMediaPlugin.AUDIO_METHOD_TYPE}/setMediaSourceSettings',
+      settings,
+    );
+  }
+
+  /// Buffering of the player from now on. The back buffer is kept from when
+  /// the player was created.
+  Future<void> setBufferProfile(BufferProfile profile) async {
+    await channel.invokeMethod(
+      '${FlutterMediaPlugin.AUDIO_METHOD_TYPE}/setBufferProfile',
+      profile.toMap(),
+    );
+  }
+
+  /// Index of the first queued song with [key], -1 if it is not queued.
+  Future<int> indexOfKey(String key) async {
+    return await channel.invokeMethod(
+      '${FlutterMediaPlugin.AUDIO_METHOD_TYPE}/indexOfKey',
+      {
+        'key': key,
+      },
+    );
+  }
+
+  Future<bool> containsKey(String key) async {
+    return await channel.invokeMethod(
+      '${FlutterMediaPlugin.AUDIO_METHOD_TYPE}/containsKey',
+      {
+        'key': key,
+      },
+    );
+  }
+
+  /// Queue indices of up to [limit] songs whose title, artist or album words
+  /// start with the words of [query], ignoring case, in queue order.
+  Future<List<int>> searchQueue(String query, {int limit = 50}) async {
+    List<dynamic> indices = await channel.invokeMethod(
+      '${FlutterMediaPlugin.AUDIO_METHOD_TYPE}/searchQueue',
+      {
+        'query': query,
+        'limit': limit,
+      },
+    );
+    return indices == null ? [] : List<int>.from(indices);
+  }
+
+  /// Removes the first queued song with [key].
+  Future<bool> removeByKey(String key) async {
+    return await channel.invokeMethod(
+      '${FlutterMediaPlugin.AUDIO_METHOD_TYPE}/removeByKey',
+      {
+        'key': key,
+      },
+    );
+  }
+
+  /// Adds all [songs] at [index] with a single playlist change.
+  Future<bool> addSongsAtIndex(int index, List<Song> songs,
+      {bool shouldPlay = false}) async {
+    List<Map<String, dynamic>> songMaps = [];
+    for (Song song in songs) {
+      Map<String, dynamic> songMap = song.toJson();
+      if (songMap == null) {
+        return false;
+      }
+      songMaps.add(songMap);
+    }
+
+    return await channel.invokeMethod(
+      '${FlutterMediaPlugin.AUDIO_METHOD_TYPE}/addSongsAtIndex',
+      {
+        'index': index,
+        'songs': songMaps,
+        'shouldPlay': shouldPlay ? 1 : 0,
+      },
+    );
+  }
+
+  /// Removes the songs in [from, to).
+  Future<bool> removeRange(int from, int to) async {
+    return await channel.invokeMethod(
+      '${FlutterMediaPlugin.AUDIO_METHOD_TYPE}/removeRange',
+      {
+        'from': from,
+        'to': to,
+      },
+    );
+  }
+
+  /// Moves the songs in [from, to) so that the first of them ends up at
+  /// [newIndex].
+  Future<bool> moveRange(int from, int to, int newIndex) async {
+    return await channel.invokeMethod(
+      '${FlutterMediaPlugin.AUDIO_METHOD_TYPE}/moveRange',
+      {
+        'from': from,
+        'to': to,
+        'newIndex': newIndex,
+      },
+    );
+  }
+
+  /// Limits of caching the start of upcoming songs ahead of a skip to them:
+  /// the first [bytesPerItem] bytes of the next [itemCount] songs are cached,
+  /// using at most [budgetBytes] for all prefetched songs. An [itemCount] of 0
+  /// disables prefetching.
+  Future<void> setPrefetchLimits({
+    int itemCount = 3,
+    int bytesPerItem = 512 * 1024,
+    int budgetBytes = 32 * 1024 * 1024,
+  }) async {
+    await channel.invokeMethod(
+      '${FlutterMediaPlugin.AUDIO_METHOD_TYPE}/setPrefetchLimits',
+      {
+        'itemCount': itemCount,
+        'bytesPerItem': bytesPerItem,
+        'budgetBytes': budgetBytes,
+      },
+    );
+  }
+
+  /// Times of the skips of this session from the command to the position
+  /// discontinuity, buffering, ready state and first audio of the player, as
+  /// histograms per stage under 'cache' and 'network', depending on whether
+  /// the start of the song was cached. Each histogram has 'counts' for the
+  /// buckets up to each of 'bucketBoundsMs' plus one above, 'count', 'sumMs'
+  /// and 'maxMs'. [reset] starts a new session.
+  Future<Map<dynamic, dynamic>> getSkipLatencies({bool reset = false}) async {
+    return await channel.invokeMethod(
+      '${FlutterMediaPlugin.AUDIO_METHOD_TYPE}/getSkipLatencies',
+      {
+        'reset': reset,
+      },
+    );
+  }
+
+  /// Overlaps consecutive songs by [crossfadeMs] with a volume ramp, 0 plays
+  /// them gapless. Each transition is reported to onTrackTransition listeners.
+  Future<void> setCrossfade(int crossfadeMs) async {
+    await channel.invokeMethod(
+      '${FlutterMediaPlugin.AUDIO_METHOD_TYPE}/setCrossfade',
+      {
+        'crossfadeMs': crossfadeMs,
+      },
+    );
+  }
+
+  /// Reshuffles the queue with [seed], later playlists are shuffled with it
+  /// too. The same seed and songs always give the same order. Returns the new
+  /// order like [getShuffleOrder].
+  Future<List<int>> setShuffleSeed(int seed) async {
+    Map<dynamic, dynamic> shuffleOrder = await channel.invokeMethod(
+      '${FlutterMediaPlugin.AUDIO_METHOD_TYPE}/setShuffleSeed',
+      {
+        'seed': seed,
+      },
+    );
+    return shuffleOrder == null ? [] : List<int>.from(shuffleOrder['order']);
+  }
+
+  /// Queue indices in the order they are played while shuffle is enabled.
+  Future<List<int>> getShuffleOrder() async {
+    Map<dynamic, dynamic> shuffleOrder = await channel.invokeMethod(
+      '${FlutterMediaPlugin.AUDIO_METHOD_TYPE}/getShuffleOrder',
+    );
+    return shuffleOrder == null ? [] : List<int>.from(shuffleOrder['order']);
+  }
+
+  /// Plays the playlist named [playlistName] again from where it was left, if
+  /// it is still resident natively. Returns false if it has to be set again.
+  Future<bool> switchPlaylist(String playlistName) async {
+    return await channel.invokeMethod(
+      '${FlutterMediaPlugin.AUDIO_METHOD_TYPE}/switchPlaylist',
+      {
+        'playlistName': playlistName,
+      },
+    );
+  }
+
+  /// Songs of all playlists kept resident for [switchPlaylist] together. The
+  /// least recently played playlists are released beyond it.
+  Future<void> setResidentSongBudget(int budget) async {
+    await channel.invokeMethod(
+      '${FlutterMediaPlugin.AUDIO_METHOD_TYPE}/setResidentSongBudget',
+      {
+        'budget': budget,
+      },
+    );
+  }
+
+  /// Switches between holding a copy of the whole playlist and paged mode. In
+  /// paged mode only the playlist metadata is synced, songs are read with
+  /// [getPlaylistPage] or through the window set with [setPlaylistWindow],
+  /// and onPlaylistChanged listeners are not called.
+  void setPlaylistPaged(bool isPlaylistPaged) {
+    if (_isPlaylistPaged == isPlaylistPaged) {
+      return;
+    }
+    _isPlaylistPaged = isPlaylistPaged;
+    _currentPlaylist = null;
+    _playlistRevision = -1;
+    _setPagedPlaylist("", -1, -1);
+    _initialize();
+  }
+
+  /// Up to [limit] songs of the queue from [offset].
+  Future<List<Song>> getPlaylistPage(int offset, int limit) async {
+    Map<dynamic, dynamic> page = await channel.invokeMethod(
+      '${FlutterMediaPlugin.AUDIO_METHOD_TYPE}/getPlaylistPage',
+      {
+        'offset': offset,
+        'limit': limit,
+      },
+    );
+    if (page == null) {
+      return [];
+    }
+    return PlaylistCodec.decode(page['playlistBytes']).mediaList;
+  }
+
+  /// Subscribes to up to [limit] songs of the queue from [offset]. In paged
+  /// mode they are sent to onPlaylistWindowChanged listeners now and after
+  /// every playlist change. A [limit] of 0 unsubscribes.
+  Future<void> setPlaylistWindow(int offset, int limit) async {
+    await channel.invokeMethod(
+      '${FlutterMediaPlugin.AUDIO_METHOD_TYPE}/setPlaylistWindow',
+      {
+        'offset': offset,
+        'limit': limit,
+      },
+    );
+  }
+
+  /// Applies [commands] in one platform call. Every command is the argument map
+  /// of addSongAtIndex, removeSongFromIndex, skipToIndex or playNext with an
+  /// extra 'method' entry. Either all commands are applied or none.
+  Future<List<dynamic>> batch(List<Map<String, dynamic>> commands) async {
+    return await channel.invokeMethod(
+      '${FlutterMediaPlugin.AUDIO_METHOD_TYPE}/batch',
+      {
+        'commands': commands,
+      },
+    );
+  }
+
   Future<void> setPlaylist(Playlist<Song> playlist) async {
     if (playlist == null) {
       return false;
     }
-    String playlistString = json.encode(playlist);
     return await channel.invokeMethod(
-      "${FlutterMediaPlugin.AUDIO_METHOD_TYPE}/setPlaylist",
+      "${FlutterMediaPlugin.AUDIO_METHOD_TYPE}/setPlaylistBinary",
       {
-        "playlist": playlistString,
+        "playlist": PlaylistCodec.encode(playlist),
       },
     );
   }
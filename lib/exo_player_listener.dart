@@ -1,6 +1,33 @@
 import 'package:flutter_media_plugin/media/media.dart';
 import 'package:flutter_media_plugin/playlist.dart';
 
+/// Timing of a transition to the next media. [gapMs] is how long nothing was
+/// audible, [overlapMs] how long both media played. [driftMs] is how far the
+/// crossfading players were apart, 0 without a crossfade.
+///
+/// [gapMeasured] is false for a gapless transition which didn't rebuffer. Its
+/// [gapMs] is then assumed to be 0, not measured.
+class TrackTransition {
+  final int fromIndex;
+  final int toIndex;
+  final int crossfadeMs;
+  final int gapMs;
+  final int overlapMs;
+  final int driftMs;
+  final bool gapMeasured;
+
+  TrackTransition(this.fromIndex, this.toIndex, this.crossfadeMs, this.gapMs,
+      this.overlapMs, this.driftMs, this.gapMeasured);
+
+  static TrackTransition fromMap(Map<dynamic, dynamic> map) {
+    if (map == null) {
+      return null;
+    }
+    return TrackTransition(map['fromIndex'], map['toIndex'], map['crossfadeMs'],
+        map['gapMs'], map['overlapMs'], map['driftMs'], map['gapMeasured']);
+  }
+}
+
 class ExoPlayerListener<T extends Media> {
   final Function(int windowIndex) _onMediaPeriodCreated;
   final Function(int windowIndex, int nextWindowIndex, T media) _onTracksChanged;
@@ -13,6 +40,8 @@ class ExoPlayerListener<T extends Media> {
   final Function(Playlist<T>) _onPlaylistChanged;
   final Function(String, int, T) _onMediaAddedToPlaylist;
   final Function(String, int, T) _onMediaRemovedFromPlaylist;
+  final Function(int, List<T>) _onPlaylistWindowChanged;
+  final Function(TrackTransition) _onTrackTransition;
   final Function(String) _onPlayerStatus;
 
   ExoPlayerListener({
@@ -27,6 +56,8 @@ class ExoPlayerListener<T extends Media> {
     Function(Playlist<T>) onPlaylistChanged,
     Function(String, int, T) onMediaAddedToPlaylist,
     Function(String, int, T) onMediaRemovedFromPlaylist,
+    Function(int, List<T>) onPlaylistWindowChanged,
+    Function(TrackTransition) onTrackTransition,
     Function(String) onPlayerStatus,
   })  : _onMediaPeriodCreated = onMediaPeriodCreated,
         _onTracksChanged = onTracksChanged,
@@ -39,6 +70,8 @@ class ExoPlayerListener<T extends Media> {
         _onPlaylistChanged = onPlaylistChanged,
         _onMediaAddedToPlaylist = onMediaAddedToPlaylist,
         _onMediaRemovedFromPlaylist = onMediaRemovedFromPlaylist,
+        _onPlaylistWindowChanged = onPlaylistWindowChanged,
+        _onTrackTransition = onTrackTransition,
         _onPlayerStatus = onPlayerStatus;
 
 //  void onTimelineChanged(Timeline timeline, Object manifest, int reason) {}
@@ -109,6 +142,18 @@ class ExoPlayerListener<T extends Media> {
     }
   }
 
+  void onPlaylistWindowChanged(int offset, List<T> media) {
+    if (_onPlaylistWindowChanged != null) {
+      _onPlaylistWindowChanged(offset, media);
+    }
+  }
+
+  void onTrackTransition(TrackTransition transition) {
+    if (_onTrackTransition != null) {
+      _onTrackTransition(transition);
+    }
+  }
+
   void onPlayerStatus(String message) {
     if (_onPlayerStatus != null) {
       _onPlayerStatus(message);
@@ -7,6 +7,9 @@ class FlutterMediaPlugin {
   static const String VIDEO_METHOD_TYPE = "VIDEO_TYPE";
   static const String AUDIO_METHOD_TYPE = "AUDIO_TYPE";
   static const String DOWNLOAD_METHOD_TYPE = "DOWNLOAD_TYPE";
+  static const String METRICS_METHOD_TYPE = "METRICS_TYPE";
+  static const String EVENT_METHOD_TYPE = "EVENT_TYPE";
+  static const String EVENTS_METHOD = "$EVENT_METHOD_TYPE/onEvents";
 
   static RegExp _regExp = new RegExp(r"([^/]+)/([^/]+)");
   static const MethodChannel _channel =
@@ -18,33 +21,45 @@ class FlutterMediaPlugin {
 
   FlutterMediaPlugin() {
     _channel.setMethodCallHandler((MethodCall call) async {
-      try {
-        Match match = _regExp.firstMatch(call.method);
-
-        if (match.groupCount >= 2) {
-          String methodType, method;
-          methodType = match.group(1);
-          method = match.group(2);
-          if (methodType == AUDIO_METHOD_TYPE) {
-            if (_audioPlayer != null) {
-              _audioPlayer.callMethod(method, call.arguments);
-            }
-          } else if (methodType == VIDEO_METHOD_TYPE) {
-            if (_videoPlayer != null) {
-              _videoPlayer.callMethod(method, call.arguments);
-            }
-          } else if (methodType == DOWNLOAD_METHOD_TYPE) {
-            if (_downloadManager != null) {
-              _downloadManager.callMethod(method, call.arguments);
-            }
-          }
+      if (call.method == EVENTS_METHOD) {
+        // events of one native frame: method and arguments pairs in order
+        List<dynamic> events = call.arguments;
+        for (int i = 0; i + 1 < events.length; i += 2) {
+          _handleMethod(events[i], events[i + 1]);
         }
-      } catch (e) {
-        print(e.toString());
+      } else {
+        _handleMethod(call.method, call.arguments);
       }
     });
   }
 
+  static void _handleMethod(String fullMethod, dynamic arguments) {
+    try {
+      Match match = _regExp.firstMatch(fullMethod);
+
+      if (match.groupCount >= 2) {
+        String methodType, method;
+        methodType = match.group(1);
+        method = match.group(2);
+        if (methodType == AUDIO_METHOD_TYPE) {
+          if (_audioPlayer != null) {
+            _audioPlayer.callMethod(method, arguments);
+          }
+        } else if (methodType == VIDEO_METHOD_TYPE) {
+          if (_videoPlayer != null) {
+            _videoPlayer.callMethod(method, arguments);
+          }
+        } else if (methodType == DOWNLOAD_METHOD_TYPE) {
+          if (_downloadManager != null) {
+            _downloadManager.callMethod(method, arguments);
+          }
+        }
+      }
+    } catch (e) {
+      print(e.toString());
+    }
+  }
+
   static AudioPlayer get audioPlayer {
     if (_audioPlayer != null) {
       return _audioPlayer;
@@ -70,4 +85,37 @@ class FlutterMediaPlugin {
 
     return _downloadManager = new DownloadManager(channel: _channel);
   }
+
+  static Future<Map<String, int>> get methodInvocationCounts async {
+    Map<dynamic, dynamic> counts = await _channel
+        .invokeMethod('$METRICS_METHOD_TYPE/invocationCounts');
+    return Map<String, int>.from(counts);
+  }
+
+  /// Delivered, dropped, pending and in flight counts of the native events.
+  static Future<Map<String, int>> get eventCounters async {
+    Map<dynamic, dynamic> counters =
+        await _channel.invokeMethod('$METRICS_METHOD_TYPE/eventCounters');
+    return Map<String, int>.from(counters);
+  }
+
+  /// Enables the channel traffic metrics returned by [metricsSnapshot].
+  static Future<void> setMetricsEnabled(bool enabled) async {
+    await _channel.invokeMethod(
+      '$METRICS_METHOD_TYPE/setEnabled',
+      {
+        'enabled': enabled,
+      },
+    );
+  }
+
+  /// Count, latency histogram and encoded payload bytes of every inbound
+  /// method and outbound event, keyed by the full method name.
+  static Future<Map<dynamic, dynamic>> metricsSnapshot() async {
+    return await _channel.invokeMethod('$METRICS_METHOD_TYPE/snapshot');
+  }
+
+  static Future<void> resetMetrics() async {
+    await _channel.invokeMethod('$METRICS_METHOD_TYPE/reset');
+  }
 }
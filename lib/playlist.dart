@@ -68,6 +68,32 @@ class Playlist<T extends Media> {
     return false;
   }
 
+  /// Removes the media in [from, to).
+  bool removeMediaRange(int from, int to) {
+    if (from < 0 || to > _mediaList.length || from > to) {
+      return false;
+    }
+
+    _mediaList.removeRange(from, to);
+    return true;
+  }
+
+  /// Moves the media in [from, to) so that the first of them ends up at
+  /// [newIndex].
+  bool moveMediaRange(int from, int to, int newIndex) {
+    if (from < 0 || to > _mediaList.length || from > to) {
+      return false;
+    }
+    if (newIndex < 0 || newIndex > _mediaList.length - (to - from)) {
+      return false;
+    }
+
+    List<T> moved = _mediaList.sublist(from, to);
+    _mediaList.removeRange(from, to);
+    _mediaList.insertAll(newIndex, moved);
+    return true;
+  }
+
   T getMediaAtIndex(int index) {
     if (index < 0) return null;
     if (index >= _mediaList.length) return null;
@@ -0,0 +1,98 @@
+import 'dart:convert';
+import 'dart:typed_data';
+
+import 'package:flutter_media_plugin/media/song.dart';
+import 'package:flutter_media_plugin/playlist.dart';
+
+/// Binary playlist layout shared with PlaylistCodec.java: version, string
+/// table, playlist name ref, song count and six string refs per song. All
+/// integers are unsigned varints.
+class PlaylistCodec {
+  static const int _version = 1;
+
+  static Uint8List encode(Playlist<Song> playlist) {
+    Map<String, int> stringRefs = Map();
+    List<String> strings = List();
+    List<int> refs = List();
+
+    int ref(String string) {
+      return stringRefs.putIfAbsent(string, () {
+        strings.add(string);
+        return strings.length - 1;
+      });
+    }
+
+    int nameRef = ref(playlist.playlistName);
+    for (Song song in playlist.mediaList) {
+      Map<String, dynamic> map = song.toJson();
+      refs.add(ref(song.key));
+      refs.add(ref(map['title']));
+      refs.add(ref(map['artists']));
+      refs.add(ref(map['album']));
+      refs.add(ref(song.album_art_url));
+      refs.add(ref(song.url));
+    }
+
+    BytesBuilder builder = BytesBuilder(copy: false);
+    void writeVarInt(int value) {
+      while (value >= 0x80) {
+        builder.addByte((value & 0x7F) | 0x80);
+        value >>= 7;
+      }
+      builder.addByte(value);
+    }
+
+    writeVarInt(_version);
+    writeVarInt(strings.length);
+    for (String string in strings) {
+      List<int> bytes = utf8.encode(string);
+      writeVarInt(bytes.length);
+      builder.add(bytes);
+    }
+    writeVarInt(nameRef);
+    writeVarInt(playlist.getSize());
+    refs.forEach(writeVarInt);
+    return builder.takeBytes();
+  }
+
+  static Playlist<Song> decode(Uint8List bytes) {
+    int position = 0;
+    int readVarInt() {
+      int value = 0;
+      int shift = 0;
+      while (true) {
+        int b = bytes[position++];
+        value |= (b & 0x7F) << shift;
+        if (b & 0x80 == 0) {
+          return value;
+        }
+        shift += 7;
+      }
+    }
+
+    if (readVarInt() != _version) {
+      return null;
+    }
+
+    int stringCount = readVarInt();
+    List<String> strings = List(stringCount);
+    for (int i = 0; i < stringCount; i++) {
+      int length = readVarInt();
+      strings[i] = utf8.decode(bytes.sublist(position, position + length));
+      position += length;
+    }
+
+    Playlist<Song> playlist = Playlist(strings[readVarInt()]);
+    int songCount = readVarInt();
+    for (int i = 0; i < songCount; i++) {
+      String key = strings[readVarInt()];
+      String title = strings[readVarInt()];
+      String artists = strings[readVarInt()];
+      String album = strings[readVarInt()];
+      String albumArtUrl = strings[readVarInt()];
+      String url = strings[readVarInt()];
+      playlist.addMedia(Song(key, title, artists, album, albumArtUrl, url));
+    }
+    return playlist;
+  }
+}
@@ -0,0 +1,30 @@
+class PositionAnchor {
+  final int position;
+  final int timestamp;
+  final double playbackSpeed;
+  final bool isPlaying;
+  final int duration;
+  final int windowIndex;
+
+  PositionAnchor.fromMap(Map<dynamic, dynamic> map)
+      : position = map['position'],
+        timestamp = map['timestamp'],
+        playbackSpeed = map['playbackSpeed'],
+        isPlaying = map['isPlaying'],
+        duration = map['duration'],
+        windowIndex = map['windowIndex'];
+
+  /// Position interpolated from this anchor, e.g. on every frame of a seek bar.
+  int positionAt(DateTime time) {
+    if (!isPlaying) {
+      return position;
+    }
+
+    int elapsed = time.millisecondsSinceEpoch - timestamp;
+    int interpolated = position + (elapsed * playbackSpeed).round();
+    if (duration != null && duration > 0 && interpolated > duration) {
+      return duration;
+    }
+    return interpolated;
+  }
+}
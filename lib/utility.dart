@@ -85,3 +85,59 @@ class DownloadUtility {
   // ignore: non_constant_identifier_names
   static const int STATE_RESTARTING = 7;
 }
+
+/// Buffer durations and byte target of a player. Values left null keep the
+/// ones of [preset]: 'default', 'lowMemory' (small buffers, for music),
+/// 'lowLatencyStart' (playback starts with little buffered) or 'resilient'
+/// (large buffers and a back buffer, for video over flaky networks).
+class BufferProfile {
+  static const BufferProfile lowMemory = BufferProfile(preset: 'lowMemory');
+  static const BufferProfile lowLatencyStart =
+      BufferProfile(preset: 'lowLatencyStart');
+  static const BufferProfile resilient = BufferProfile(preset: 'resilient');
+
+  final String preset;
+  final int minBufferMs;
+  final int maxBufferMs;
+  final int bufferForPlaybackMs;
+  final int bufferForPlaybackAfterRebufferMs;
+  final int targetBufferBytes;
+  final int backBufferMs;
+
+  const BufferProfile({
+    this.preset,
+    this.minBufferMs,
+    this.maxBufferMs,
+    this.bufferForPlaybackMs,
+    this.bufferForPlaybackAfterRebufferMs,
+    this.targetBufferBytes,
+    this.backBufferMs,
+  });
+
+  Map<String, dynamic> toMap() {
+    Map<String, dynamic> map = {};
+    if (preset != null) {
+      map['preset'] = preset;
+    }
+    if (minBufferMs != null) {
+      map['minBufferMs'] = minBufferMs;
+    }
+    if (maxBufferMs != null) {
+      map['maxBufferMs'] = maxBufferMs;
+    }
+    if (bufferForPlaybackMs != null) {
+      map['bufferForPlaybackMs'] = bufferForPlaybackMs;
+    }
+    if (bufferForPlaybackAfterRebufferMs != null) {
+      map['bufferForPlaybackAfterRebufferMs'] =
+          bufferForPlaybackAfterRebufferMs;
+    }
+    if (targetBufferBytes != null) {
+      map['targetBufferBytes'] = targetBufferBytes;
+    }
+    if (backBufferMs != null) {
+      map['backBufferMs'] = backBufferMs;
+    }
+    return map;
+  }
+}
@@ -2,6 +2,7 @@ import 'package:flutter/services.dart';
 import 'package:flutter_media_plugin/exo_player_listener.dart';
 import 'package:flutter_media_plugin/flutter_media_plugin.dart';
 import 'package:flutter_media_plugin/media/video.dart';
+import 'package:flutter_media_plugin/utility.dart';
 
 enum TypeOfPlace {
   asset,
@@ -99,6 +100,15 @@ class VideoPlayer {
     );
   }
 
+  /// Buffering of the player from now on. A changed back buffer only applies
+  /// while nothing is loaded, e.g. before [addAndPlay].
+  Future<void> setBufferProfile(BufferProfile profile) async {
+    await channel.invokeMethod(
+      '${FlutterMediaPlugin.VIDEO_METHOD_TYPE}/setBufferProfile',
+      profile.toMap(),
+    );
+  }
+
   void play() {
     channel.invokeMethod('${FlutterMediaPlugin.VIDEO_METHOD_TYPE}/play');
   }